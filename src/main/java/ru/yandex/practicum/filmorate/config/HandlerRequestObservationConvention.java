@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate.config;
+
+import io.micrometer.common.KeyValue;
+import io.micrometer.common.KeyValues;
+import org.springframework.http.server.observation.DefaultServerRequestObservationConvention;
+import org.springframework.http.server.observation.ServerRequestObservationContext;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Добавляет к таймеру http.server.requests тег handler — метод контроллера, обработавший запрос,
+ * например FilmController#getPopularFilms.
+ */
+public class HandlerRequestObservationConvention extends DefaultServerRequestObservationConvention {
+    private static final KeyValue NO_HANDLER = KeyValue.of("handler", "none");
+
+    @Override
+    public KeyValues getLowCardinalityKeyValues(ServerRequestObservationContext context) {
+        return super.getLowCardinalityKeyValues(context).and(handler(context));
+    }
+
+    private KeyValue handler(ServerRequestObservationContext context) {
+        Object handler = context.getCarrier().getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE);
+        if (handler instanceof HandlerMethod handlerMethod) {
+            return KeyValue.of("handler",
+                    handlerMethod.getBeanType().getSimpleName() + "#" + handlerMethod.getMethod().getName());
+        }
+        return NO_HANDLER;
+    }
+}
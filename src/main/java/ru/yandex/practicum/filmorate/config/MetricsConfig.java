@@ -0,0 +1,38 @@
+package ru.yandex.practicum.filmorate.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.config.MeterFilter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.observation.ServerRequestObservationConvention;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+@Configuration
+public class MetricsConfig {
+
+    // Статический метод: постпроцессор создается раньше остальных бинов конфигурации
+    @Bean
+    @ConditionalOnProperty(name = "filmorate.metrics.storage.enabled", havingValue = "true", matchIfMissing = true)
+    public static StorageMetricsPostProcessor storageMetricsPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new StorageMetricsPostProcessor(meterRegistry);
+    }
+
+    @Bean
+    public MeterFilter storageHistogramFilter(
+            @Value("${filmorate.metrics.storage.histogram-methods:}") String methods) {
+        return StorageMetricsPostProcessor.histogramFilter(Arrays.stream(methods.split(","))
+                .map(String::trim)
+                .filter(method -> !method.isEmpty())
+                .collect(Collectors.toSet()));
+    }
+
+    @Bean
+    public ServerRequestObservationConvention handlerRequestObservationConvention() {
+        return new HandlerRequestObservationConvention();
+    }
+}
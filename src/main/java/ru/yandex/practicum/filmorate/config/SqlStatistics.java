@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate.config;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Счетчик SQL-запросов текущего потока в пределах области — HTTP-запроса ({@link SqlStatisticsFilter})
+ * или участка теста. Запросы считает {@link StatementCountingDataSource}; вне области они не учитываются.
+ * Области могут быть вложенными: запрос учитывается во всех открытых областях потока.
+ */
+public final class SqlStatistics {
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+
+    private SqlStatistics() {
+    }
+
+    public static Scope begin() {
+        Scope scope = new Scope(CURRENT.get());
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    static void record(long nanos) {
+        Scope scope = CURRENT.get();
+        if (scope != null) {
+            scope.record(nanos);
+        }
+    }
+
+    public static final class Scope implements AutoCloseable {
+        private final Scope parent;
+        private int statements;
+        private long nanos;
+
+        private Scope(Scope parent) {
+            this.parent = parent;
+        }
+
+        public int getStatements() {
+            return statements;
+        }
+
+        public long getTimeMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+
+        public long getTimeNanos() {
+            return nanos;
+        }
+
+        @Override
+        public void close() {
+            if (parent == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(parent);
+            }
+        }
+
+        private void record(long elapsed) {
+            for (Scope scope = this; scope != null; scope = scope.parent) {
+                scope.statements++;
+                scope.nanos += elapsed;
+            }
+        }
+    }
+}
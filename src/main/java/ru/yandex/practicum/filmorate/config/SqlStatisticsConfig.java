@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+@Configuration
+@ConditionalOnProperty(name = "filmorate.sql-stats.enabled", havingValue = "true", matchIfMissing = true)
+public class SqlStatisticsConfig {
+
+    @Bean
+    public static BeanPostProcessor statementCountingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof StatementCountingDataSource)) {
+                    return new StatementCountingDataSource(dataSource);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public FilterRegistrationBean<SqlStatisticsFilter> sqlStatisticsFilter(
+            MeterRegistry meterRegistry,
+            @Value("${filmorate.sql-stats.statement-budget:20}") int statementBudget,
+            @Value("${filmorate.sql-stats.debug-headers:false}") boolean debugHeaders) {
+        return new FilterRegistrationBean<>(new SqlStatisticsFilter(meterRegistry, statementBudget, debugHeaders));
+    }
+}
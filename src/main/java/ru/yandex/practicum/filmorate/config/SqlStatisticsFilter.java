@@ -0,0 +1,75 @@
+package ru.yandex.practicum.filmorate.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Считает SQL-запросы и время в БД для каждого HTTP-запроса. Пишет их в метрики
+ * filmorate.http.sql.statements и filmorate.http.sql.time с тегами метода и шаблона URI,
+ * предупреждает в логе о превышении бюджета запросов, а в отладочном режиме добавляет
+ * заголовки ответа {@link #STATEMENTS_HEADER} и {@link #TIME_HEADER}.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class SqlStatisticsFilter extends OncePerRequestFilter {
+    public static final String STATEMENTS_HEADER = "X-Sql-Statements";
+    public static final String TIME_HEADER = "X-Sql-Time-Ms";
+
+    private final MeterRegistry meterRegistry;
+    private final int statementBudget;
+    private final boolean debugHeaders;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        // Заголовки нельзя добавить после записи тела, поэтому в отладочном режиме тело буферизуется
+        ContentCachingResponseWrapper buffered = debugHeaders ? new ContentCachingResponseWrapper(response) : null;
+        try (SqlStatistics.Scope scope = SqlStatistics.begin()) {
+            try {
+                chain.doFilter(request, buffered != null ? buffered : response);
+            } finally {
+                record(request, scope);
+                if (buffered != null) {
+                    buffered.setHeader(STATEMENTS_HEADER, String.valueOf(scope.getStatements()));
+                    buffered.setHeader(TIME_HEADER, String.valueOf(scope.getTimeMillis()));
+                    buffered.copyBodyToResponse();
+                }
+            }
+        }
+    }
+
+    private void record(HttpServletRequest request, SqlStatistics.Scope scope) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+        DistributionSummary.builder("filmorate.http.sql.statements")
+                .description("Число SQL-запросов на HTTP-запрос")
+                .tag("method", request.getMethod())
+                .tag("uri", uri)
+                .register(meterRegistry)
+                .record(scope.getStatements());
+        Timer.builder("filmorate.http.sql.time")
+                .description("Время выполнения SQL на HTTP-запрос")
+                .tag("method", request.getMethod())
+                .tag("uri", uri)
+                .register(meterRegistry)
+                .record(scope.getTimeNanos(), TimeUnit.NANOSECONDS);
+
+        if (scope.getStatements() > statementBudget) {
+            log.warn("SQL: {} {} выполнил {} запросов к БД за {} мс при бюджете {}",
+                    request.getMethod(), uri, scope.getStatements(), scope.getTimeMillis(), statementBudget);
+        }
+    }
+}
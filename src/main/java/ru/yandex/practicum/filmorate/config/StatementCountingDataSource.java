@@ -0,0 +1,69 @@
+package ru.yandex.practicum.filmorate.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Источник данных, который передает в {@link SqlStatistics} каждое выполнение SQL и его время.
+ * Выполнением считается вызов execute*: пакет executeBatch — один запрос к БД.
+ * Время чтения ResultSet после выполнения не учитывается.
+ */
+public class StatementCountingDataSource extends DelegatingDataSource {
+
+    public StatementCountingDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return countingConnection(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return countingConnection(super.getConnection(username, password));
+    }
+
+    private static Connection countingConnection(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(StatementCountingDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    // Statement, PreparedStatement или CallableStatement — по типу метода, создавшего его
+                    if (result instanceof Statement && method.getReturnType().isInterface()) {
+                        return countingStatement(result, method.getReturnType());
+                    }
+                    return result;
+                });
+    }
+
+    private static Object countingStatement(Object statement, Class<?> type) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (!method.getName().startsWith("execute")) {
+                return invoke(statement, method, args);
+            }
+            long started = System.nanoTime();
+            try {
+                return invoke(statement, method, args);
+            } finally {
+                SqlStatistics.record(System.nanoTime() - started);
+            }
+        };
+        return Proxy.newProxyInstance(StatementCountingDataSource.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
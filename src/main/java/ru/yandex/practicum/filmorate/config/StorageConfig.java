@@ -1,43 +1,88 @@
 package ru.yandex.practicum.filmorate.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.storage.film.*;
-import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+import ru.yandex.practicum.filmorate.storage.persistence.MemoryPersistence;
 import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 
+import java.nio.file.Path;
+import java.time.Duration;
+
 @Configuration
 public class StorageConfig {
 
+    @Bean
+    @ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "jdbc", matchIfMissing = true)
+    public FilmDbStorage filmDbStorage(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                       GenreMpaStorage genreMpaStorage, UserDbStorage userStorage,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${filmorate.likes.batching.enabled:false}") boolean likeBatching,
+                                       @Value("${filmorate.likes.batching.batch-size:256}") int likeBatchSize,
+                                       @Value("${filmorate.likes.batching.max-wait:5ms}") Duration likeBatchMaxWait,
+                                       @Value("${filmorate.likes.batching.submit-timeout:10s}")
+                                       Duration likeSubmitTimeout) {
+        FilmDbStorage filmStorage = new FilmDbStorage(jdbcTemplate, transactionTemplate, genreMpaStorage);
+        userStorage.addDeletionListener(filmStorage::removeUserLikes);
+        if (likeBatching) {
+            filmStorage.enableLikeBatching(likeBatchSize, likeBatchMaxWait, likeSubmitTimeout, meterRegistry);
+        }
+        return filmStorage;
+    }
+
     @Bean
     @ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "jdbc", matchIfMissing = true)
     @Primary
-    public FilmStorage filmStorage(JdbcTemplate jdbcTemplate) {
-        // Имя метода может быть любым, но лучше дать осмысленное
-        return new FilmDbStorage(jdbcTemplate);
+    public FilmStorage filmStorage(FilmDbStorage filmDbStorage, MeterRegistry meterRegistry,
+                                   @Value("${filmorate.cache.films.max-size:10000}") long cacheMaxSize,
+                                   @Value("${filmorate.cache.films.ttl:10m}") Duration cacheTtl) {
+        // Кэш фильмов поверх БД; max-size=0 фактически отключает его
+        return new CachingFilmStorage(filmDbStorage, cacheMaxSize, cacheTtl, meterRegistry);
     }
 
     @Bean
     @ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "memory")
-    public FilmStorage inMemoryFilmStorage() {
-        return new InMemoryFilmStorage();
+    public InMemoryFilmStorage inMemoryFilmStorage(InMemoryUserStorage inMemoryUserStorage,
+                                                   ObjectProvider<MemoryPersistence> memoryPersistence) {
+        MemoryPersistence persistence = memoryPersistence.getIfAvailable();
+        if (persistence == null) {
+            return new InMemoryFilmStorage(inMemoryUserStorage);
+        }
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage(inMemoryUserStorage, persistence);
+        persistence.open(filmStorage, inMemoryUserStorage);
+        return filmStorage;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "filmorate.storage.memory.persistence.enabled", havingValue = "true")
+    public MemoryPersistence memoryPersistence(
+            GenreMpaStorage genreMpaStorage,
+            @Value("${filmorate.storage.memory.persistence.directory:data}") Path directory,
+            @Value("${filmorate.storage.memory.persistence.snapshot-interval:PT10M}") Duration snapshotInterval) {
+        // Файлы восстанавливаются вместе с хранилищем фильмов; close() делает последний снимок при остановке
+        return new MemoryPersistence(directory, snapshotInterval, genreMpaStorage.getRegistry());
     }
 
     @Bean
     @ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "jdbc", matchIfMissing = true)
     @Primary
-    public UserStorage userStorage(JdbcTemplate jdbcTemplate) {
-        return new UserDbStorage(jdbcTemplate);
+    public UserDbStorage userStorage(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        return new UserDbStorage(jdbcTemplate, transactionTemplate);
     }
 
     @Bean
     @ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "memory")
-    public UserStorage inMemoryUserStorage() {
-        return new InMemoryUserStorage();
+    public InMemoryUserStorage inMemoryUserStorage(ObjectProvider<MemoryPersistence> memoryPersistence) {
+        MemoryPersistence persistence = memoryPersistence.getIfAvailable();
+        return persistence != null ? new InMemoryUserStorage(persistence) : new InMemoryUserStorage();
     }
 
     @Bean
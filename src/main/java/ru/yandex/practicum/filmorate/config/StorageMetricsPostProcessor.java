@@ -0,0 +1,135 @@
+package ru.yandex.practicum.filmorate.config;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import lombok.RequiredArgsConstructor;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.util.ReflectionUtils;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.GenreMpaStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Оборачивает хранилища фильмов, пользователей и справочников в прокси, который замеряет каждый вызов
+ * метода из интерфейса хранилища: таймер filmorate.storage (число вызовов и суммарное время)
+ * и счетчик ошибок filmorate.storage.errors. Теги — класс хранилища и имя метода.
+ * Гистограмма задержек включается только для методов из {@link #histogramFilter}.
+ * <p>
+ * Исключения предметной области (нет такого фильма, неверный запрос) — обычный ответ хранилища,
+ * а не сбой, поэтому в счетчик ошибок они не попадают.
+ * <p>
+ * Прокси наследует класс хранилища, поэтому бины по-прежнему внедряются по конкретному типу.
+ * На вызов приходятся два System.nanoTime и запись в таймер, найденный по методу без аллокаций.
+ */
+@RequiredArgsConstructor
+public class StorageMetricsPostProcessor implements BeanPostProcessor {
+    static final String TIMER_NAME = "filmorate.storage";
+    static final String ERRORS_NAME = "filmorate.storage.errors";
+    private static final List<Class<?>> STORAGE_TYPES = List.of(FilmStorage.class, UserStorage.class, GenreMpaStorage.class);
+    private static final List<Class<? extends RuntimeException>> DOMAIN_EXCEPTIONS =
+            List.of(NotFoundException.class, ValidationException.class);
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        List<Class<?>> storageTypes = STORAGE_TYPES.stream()
+                .filter(type -> type.isInstance(bean))
+                .toList();
+        if (storageTypes.isEmpty()) {
+            return bean;
+        }
+
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvisor(new DefaultPointcutAdvisor(new StorageMethodPointcut(storageTypes),
+                new TimingInterceptor(meterRegistry.getObject(), bean.getClass().getSimpleName())));
+        return proxyFactory.getProxy(bean.getClass().getClassLoader());
+    }
+
+    /**
+     * Включает гистограмму задержек для таймеров filmorate.storage с перечисленными именами методов.
+     * На каждую пару хранилище × метод гистограмма добавляет десятки бакетов, поэтому она нужна
+     * только горячим методам, а для остальных хватает числа вызовов и суммарного времени.
+     */
+    static MeterFilter histogramFilter(Set<String> methods) {
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (TIMER_NAME.equals(id.getName()) && methods.contains(id.getTag("method"))) {
+                    return DistributionStatisticConfig.builder()
+                            .percentilesHistogram(true)
+                            .build()
+                            .merge(config);
+                }
+                return config;
+            }
+        };
+    }
+
+    // Служебные методы реализаций (восстановление, перезагрузка индексов) не замеряются
+    @RequiredArgsConstructor
+    private static final class StorageMethodPointcut extends StaticMethodMatcherPointcut {
+        private final List<Class<?>> storageTypes;
+
+        @Override
+        public boolean matches(Method method, Class<?> targetClass) {
+            return storageTypes.stream()
+                    .anyMatch(type -> ReflectionUtils.findMethod(type, method.getName(), method.getParameterTypes()) != null);
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static final class TimingInterceptor implements MethodInterceptor {
+        private final MeterRegistry registry;
+        private final String storage;
+        private final Map<Method, Timer> timers = new ConcurrentHashMap<>();
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Method method = invocation.getMethod();
+            Timer timer = timers.get(method);
+            if (timer == null) {
+                timer = timers.computeIfAbsent(method, this::timer);
+            }
+            long started = System.nanoTime();
+            try {
+                return invocation.proceed();
+            } catch (Throwable e) {
+                if (DOMAIN_EXCEPTIONS.stream().noneMatch(type -> type.isInstance(e))) {
+                    registry.counter(ERRORS_NAME, "storage", storage, "method", method.getName(),
+                            "exception", e.getClass().getSimpleName()).increment();
+                }
+                throw e;
+            } finally {
+                timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private Timer timer(Method method) {
+            return Timer.builder(TIMER_NAME)
+                    .description("Время вызова метода хранилища")
+                    .tag("storage", storage)
+                    .tag("method", method.getName())
+                    .register(registry);
+        }
+    }
+}
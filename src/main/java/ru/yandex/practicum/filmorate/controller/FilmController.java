@@ -4,7 +4,9 @@ import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
@@ -14,6 +16,7 @@ import java.util.List;
 @RequestMapping("/films")
 @RequiredArgsConstructor
 public class FilmController {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
     private static final Logger log = LoggerFactory.getLogger(FilmController.class);
     private final FilmService filmService;
 
@@ -24,6 +27,13 @@ public class FilmController {
         return filmService.create(film);
     }
 
+    @PostMapping("/batch")
+    @ResponseStatus(HttpStatus.CREATED)
+    public List<Film> createFilms(@RequestBody List<Film> films) {
+        log.info("Пакетное создание фильмов: {}", films.size());
+        return filmService.createAll(films);
+    }
+
     @PutMapping
     public Film updateFilm(@RequestBody Film film) {
         log.info("Обновление фильма: {}", film);
@@ -31,11 +41,21 @@ public class FilmController {
     }
 
     @GetMapping
-    public List<Film> getAllFilms(
-            @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
-        // Пока возвращаем все фильмы, пагинацию добавим позже
-        return filmService.findAll();
+    public ResponseEntity<List<Film>> getAllFilms(@RequestParam(required = false) Integer after,
+                                                  @RequestParam(required = false) Integer limit) {
+        // Без параметров постраничного вывода отдаем весь список, как и раньше
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(filmService.findAll());
+        }
+
+        // Тело остается массивом фильмов, курсор следующей страницы передаем в заголовке
+        CursorPage<Film> page = filmService.findPage(after == null ? 0 : after,
+                limit == null ? FilmService.DEFAULT_PAGE_SIZE : limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(page.getNextCursor()));
+        }
+        return response.body(page.getItems());
     }
 
     @GetMapping("/{id}")
@@ -43,6 +63,28 @@ public class FilmController {
         return filmService.findById(id);
     }
 
+    @GetMapping("/{id}/similar")
+    public List<Film> getSimilarFilms(@PathVariable int id, @RequestParam(defaultValue = "10") int count) {
+        return filmService.getSimilarFilms(id, count);
+    }
+
+    @DeleteMapping("/{id}")
+    public void deleteFilm(@PathVariable int id) {
+        log.info("Удаление фильма {}", id);
+        filmService.delete(id);
+    }
+
+    @GetMapping("/search")
+    public List<Film> searchFilms(@RequestParam String q, @RequestParam(defaultValue = "20") int limit) {
+        log.info("Поиск фильмов: '{}', limit={}", q, limit);
+        return filmService.search(q, limit);
+    }
+
+    @GetMapping("/autocomplete")
+    public List<Film> autocomplete(@RequestParam String prefix, @RequestParam(defaultValue = "10") int limit) {
+        return filmService.autocomplete(prefix, limit);
+    }
+
     @PutMapping("/{id}/like/{userId}")
     public void addLike(@PathVariable int id, @PathVariable int userId) {
         log.info("Пользователь {} ставит лайк фильму {}", userId, id);
@@ -56,12 +98,22 @@ public class FilmController {
     }
 
     @GetMapping("/popular")
-    public List<Film> getPopularFilms(@RequestParam(defaultValue = "10") int count) {
-        log.info("Запрос {} популярных фильмов", count);
+    public List<Film> getPopularFilms(@RequestParam(defaultValue = "10") int count,
+                                      @RequestParam(required = false) Integer genreId,
+                                      @RequestParam(required = false) Integer mpaId,
+                                      @RequestParam(required = false) Integer year) {
+        log.info("Запрос {} популярных фильмов, genreId={}, mpaId={}, year={}", count, genreId, mpaId, year);
 
-        List<Film> popularFilms = filmService.getPopularFilms(count);
+        List<Film> popularFilms = filmService.getPopularFilms(count, genreId, mpaId, year);
         log.info("Возвращено {} популярных фильмов", popularFilms.size());
 
         return popularFilms;
     }
+
+    @GetMapping("/trending")
+    public List<Film> getTrendingFilms(@RequestParam(defaultValue = "24h") String window,
+                                       @RequestParam(defaultValue = "10") int count) {
+        log.info("Запрос {} трендовых фильмов за {}", count, window);
+        return filmService.getTrendingFilms(window, count);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.Stats;
+import ru.yandex.practicum.filmorate.service.StatsService;
+
+@RestController
+@RequiredArgsConstructor
+public class StatsController {
+    private final StatsService statsService;
+
+    @GetMapping("/stats")
+    public Stats getStats() {
+        return statsService.getStats();
+    }
+}
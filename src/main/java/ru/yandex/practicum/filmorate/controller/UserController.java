@@ -3,8 +3,13 @@ package ru.yandex.practicum.filmorate.controller;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.model.CursorPage;
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FriendSuggestionService;
+import ru.yandex.practicum.filmorate.service.RecommendationService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import java.util.List;
@@ -14,7 +19,11 @@ import java.util.List;
 @Slf4j
 @RequiredArgsConstructor
 public class UserController {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final UserService userService;
+    private final RecommendationService recommendationService;
+    private final FriendSuggestionService friendSuggestionService;
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
@@ -30,8 +39,21 @@ public class UserController {
     }
 
     @GetMapping
-    public List<User> getAllUsers() {
-        return userService.findAll();
+    public ResponseEntity<List<User>> getAllUsers(@RequestParam(required = false) Integer after,
+                                                  @RequestParam(required = false) Integer limit) {
+        // Без параметров постраничного вывода отдаем весь список, как и раньше
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(userService.findAll());
+        }
+
+        // Тело остается массивом пользователей, курсор следующей страницы передаем в заголовке
+        CursorPage<User> page = userService.findPage(after == null ? 0 : after,
+                limit == null ? UserService.DEFAULT_PAGE_SIZE : limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(page.getNextCursor()));
+        }
+        return response.body(page.getItems());
     }
 
     @GetMapping("/{id}")
@@ -51,6 +73,23 @@ public class UserController {
         userService.removeFriend(id, friendId);
     }
 
+    @GetMapping("/{id}/friends/requests")
+    public List<User> getFriendRequests(@PathVariable int id) {
+        return userService.getFriendRequests(id);
+    }
+
+    @PutMapping("/{id}/friends/requests/{requesterId}")
+    public void acceptFriendRequest(@PathVariable int id, @PathVariable int requesterId) {
+        log.info("Пользователь {} принимает запрос дружбы от пользователя {}", id, requesterId);
+        userService.acceptFriendRequest(id, requesterId);
+    }
+
+    @DeleteMapping("/{id}/friends/requests/{requesterId}")
+    public void declineFriendRequest(@PathVariable int id, @PathVariable int requesterId) {
+        log.info("Пользователь {} отклоняет запрос дружбы от пользователя {}", id, requesterId);
+        userService.declineFriendRequest(id, requesterId);
+    }
+
     @GetMapping("/{id}/friends")
     public List<User> getFriends(@PathVariable int id) {
         return userService.getFriends(id);
@@ -60,4 +99,16 @@ public class UserController {
     public List<User> getCommonFriends(@PathVariable int id, @PathVariable int otherId) {
         return userService.getCommonFriends(id, otherId);
     }
+
+    @GetMapping("/{id}/friends/suggestions")
+    public List<User> getFriendSuggestions(@PathVariable int id, @RequestParam(defaultValue = "10") int count) {
+        log.info("Запрос {} предложений друзей для пользователя {}", count, id);
+        return friendSuggestionService.getSuggestions(id, count);
+    }
+
+    @GetMapping("/{id}/recommendations")
+    public List<Film> getRecommendations(@PathVariable int id, @RequestParam(defaultValue = "10") int count) {
+        log.info("Запрос {} рекомендаций для пользователя {}", count, id);
+        return recommendationService.getRecommendations(id, count);
+    }
 }
\ No newline at end of file
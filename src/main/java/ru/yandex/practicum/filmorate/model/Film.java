@@ -11,7 +11,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class Film {
@@ -29,9 +29,6 @@ public class Film {
     @Positive(message = "Продолжительность должна быть положительным числом")
     private Integer duration;
 
-    @Builder.Default
-    private Set<Integer> likes = new HashSet<>();
-
     @Builder.Default
     private Set<Genre> genres = new HashSet<>();
 
@@ -1,13 +1,18 @@
 package ru.yandex.practicum.filmorate.model;
 
 import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
 
-@Data
-@NoArgsConstructor
+/**
+ * Жанр из справочника. Экземпляры общие для всех фильмов, поэтому класс неизменяемый.
+ */
+@Value
+@Builder
+@Jacksonized
 @AllArgsConstructor
 public class Genre {
-    private int id;
-    private String name;
-}
\ No newline at end of file
+    int id;
+    String name;
+}
@@ -1,14 +1,19 @@
 package ru.yandex.practicum.filmorate.model;
 
 import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
 
-@Data
-@NoArgsConstructor
+/**
+ * Рейтинг MPA из справочника. Экземпляры общие для всех фильмов, поэтому класс неизменяемый.
+ */
+@Value
+@Builder
+@Jacksonized
 @AllArgsConstructor
 public class MpaRating {
-    private int id;
-    private String name;
-    private String description;
+    int id;
+    String name;
+    String description;
 }
@@ -0,0 +1,350 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Префиксное дерево нормализованных названий фильмов для автодополнения.
+ * Каждый узел хранит готовый список из не более чем {@link #MAX_SUGGESTIONS} самых популярных
+ * фильмов своего поддерева, поэтому ответ стоит O(длина префикса) независимо от числа подходящих названий.
+ * При изменении фильма пересчитываются только узлы на пути его названия.
+ * Узлы хранят детей и фильмы в массивах, а не в хэш-таблицах: у большинства узлов один ребенок и нет фильмов.
+ * <p>
+ * Своей копии счетчиков лайков индекс не держит: при пересчете узлов лайки берутся из хранилища одним
+ * обращением. Лайк только отмечает фильм, а списки на путях отмеченных фильмов пересчитываются пачкой
+ * в {@link #refreshLiked()}, поэтому запись лайка не ждет блокировку дерева и не мешает чтениям.
+ * Изменения лайков в обход сервиса (удаление пользователя, сверка счетчиков) исправляет {@link #rebuild()}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FilmAutocompleteIndex {
+    public static final int MAX_SUGGESTIONS = 10;
+    private static final int REBUILD_PAGE_SIZE = 1000;
+    private static final int[] EMPTY = new int[0];
+
+    private final FilmStorage filmStorage;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Node root = new Node();
+    // ID фильма -> нормализованное название, по которому фильм лежит в дереве
+    private Map<Integer, String> keys = new HashMap<>();
+    // Фильмы, лайки которых менялись с последнего пересчета
+    private final Set<Integer> likedFilms = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Строит дерево заново: фильмы читаются страницами, лайки каждой страницы — одним обращением
+     * к индексу популярности хранилища. Новое дерево собирается в стороне и подменяет текущее.
+     */
+    @PostConstruct
+    public void rebuild() {
+        Map<Integer, String> newKeys = new HashMap<>();
+        Map<Integer, Long> likes = new HashMap<>();
+        int afterId = 0;
+        List<Film> page;
+        do {
+            page = filmStorage.findPage(afterId, REBUILD_PAGE_SIZE);
+            int[] filmIds = page.stream().mapToInt(Film::getId).toArray();
+            long[] pageLikes = filmStorage.getLikesCounts(filmIds);
+            for (int i = 0; i < filmIds.length; i++) {
+                String key = FilmTextNormalizer.normalize(page.get(i).getName());
+                if (!key.isEmpty()) {
+                    newKeys.put(filmIds[i], key);
+                    likes.put(filmIds[i], pageLikes[i]);
+                }
+            }
+            if (filmIds.length > 0) {
+                afterId = filmIds[filmIds.length - 1];
+            }
+        } while (page.size() == REBUILD_PAGE_SIZE);
+
+        Node newRoot = new Node();
+        newKeys.forEach((filmId, key) -> path(newRoot, key, true).get(key.length()).addFilm(filmId));
+        recomputeSubtree(newRoot, ranking(likes));
+
+        lock.writeLock().lock();
+        try {
+            root = newRoot;
+            keys = newKeys;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Индекс автодополнения построен: фильмов {}", newKeys.size());
+    }
+
+    /**
+     * Добавляет фильм в дерево или переносит его под новое название.
+     */
+    public void index(Film film) {
+        lock.writeLock().lock();
+        try {
+            List<String> changed = new ArrayList<>(2);
+            String oldKey = removeFilm(film.getId());
+            if (oldKey != null) {
+                changed.add(oldKey);
+            }
+            String key = FilmTextNormalizer.normalize(film.getName());
+            if (!key.isEmpty()) {
+                keys.put(film.getId(), key);
+                path(root, key, true).get(key.length()).addFilm(film.getId());
+                changed.add(key);
+            }
+            recomputePaths(changed);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int filmId) {
+        lock.writeLock().lock();
+        try {
+            String key = removeFilm(filmId);
+            if (key != null) {
+                recomputePaths(List.of(key));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Отмечает, что лайки фильма изменились. Блокировку дерева не берет: списки лучших фильмов
+     * пересчитает ближайший {@link #refreshLiked()}.
+     */
+    public void markLikesChanged(int filmId) {
+        likedFilms.add(filmId);
+    }
+
+    /**
+     * Пересчитывает списки лучших фильмов на путях фильмов, отмеченных с прошлого вызова.
+     * Лайки всех затронутых узлов читаются из хранилища одним обращением, дерево блокируется один раз на пачку.
+     */
+    @Scheduled(fixedDelayString = "${filmorate.autocomplete.refresh-interval:PT1S}")
+    public void refreshLiked() {
+        if (likedFilms.isEmpty()) {
+            return;
+        }
+        List<Integer> filmIds = new ArrayList<>();
+        for (Iterator<Integer> iterator = likedFilms.iterator(); iterator.hasNext(); ) {
+            filmIds.add(iterator.next());
+            iterator.remove();
+        }
+        lock.writeLock().lock();
+        try {
+            recomputePaths(filmIds.stream().map(keys::get).filter(Objects::nonNull).distinct().toList());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает ID не более чем limit самых популярных фильмов, название которых начинается с prefix.
+     */
+    public List<Integer> complete(String prefix, int limit) {
+        String key = FilmTextNormalizer.normalize(prefix);
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.child(key.charAt(i));
+            }
+            int[] top = node != null ? node.top : EMPTY;
+            return Arrays.stream(top, 0, Math.min(limit, top.length)).boxed().toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Убирает фильм из его узла; списки на пути пересчитывает вызывающий. Возвращает прежнее название
+    private String removeFilm(int filmId) {
+        String key = keys.remove(filmId);
+        if (key != null) {
+            List<Node> path = path(root, key, false);
+            if (path.size() == key.length() + 1) {
+                path.get(key.length()).removeFilm(filmId);
+            }
+        }
+        return key;
+    }
+
+    // Узлы от корня до конца ключа: path.get(i) соответствует первым i символам.
+    // Без create путь обрывается на первом отсутствующем узле
+    private static List<Node> path(Node root, String key, boolean create) {
+        List<Node> path = new ArrayList<>(key.length() + 1);
+        Node node = root;
+        path.add(node);
+        for (int i = 0; i < key.length(); i++) {
+            node = create ? node.childOrCreate(key.charAt(i)) : node.child(key.charAt(i));
+            if (node == null) {
+                break;
+            }
+            path.add(node);
+        }
+        return path;
+    }
+
+    // Новый список узла состоит из его фильмов и списков детей, поэтому лайки нужны только им
+    private void recomputePaths(List<String> changedKeys) {
+        List<List<Node>> paths = changedKeys.stream().map(key -> path(root, key, false)).toList();
+        Set<Integer> candidates = new HashSet<>();
+        for (List<Node> path : paths) {
+            for (Node node : path) {
+                IntStream.of(node.films).forEach(candidates::add);
+                for (Node child : node.children) {
+                    IntStream.of(child.top).forEach(candidates::add);
+                }
+            }
+        }
+        int[] filmIds = candidates.stream().mapToInt(Integer::intValue).toArray();
+        long[] counts = filmStorage.getLikesCounts(filmIds);
+        Map<Integer, Long> likes = new HashMap<>(filmIds.length * 2);
+        for (int i = 0; i < filmIds.length; i++) {
+            likes.put(filmIds[i], counts[i]);
+        }
+        Comparator<Integer> ranking = ranking(likes);
+        for (int i = 0; i < paths.size(); i++) {
+            recomputePath(paths.get(i), changedKeys.get(i), ranking);
+        }
+    }
+
+    // Пересчет снизу вверх: списку узла хватает собственных фильмов и списков детей; пустые узлы удаляем
+    private static void recomputePath(List<Node> path, String key, Comparator<Integer> ranking) {
+        for (int i = path.size() - 1; i >= 0; i--) {
+            Node node = path.get(i);
+            recompute(node, ranking);
+            if (i > 0 && node.top.length == 0) {
+                path.get(i - 1).removeChild(key.charAt(i - 1));
+            }
+        }
+    }
+
+    private static void recomputeSubtree(Node node, Comparator<Integer> ranking) {
+        for (Node child : node.children) {
+            recomputeSubtree(child, ranking);
+        }
+        node.removeEmptyChildren();
+        recompute(node, ranking);
+    }
+
+    private static void recompute(Node node, Comparator<Integer> ranking) {
+        node.top = Stream.concat(IntStream.of(node.films).boxed(),
+                        Arrays.stream(node.children).flatMap(child -> IntStream.of(child.top).boxed()))
+                .distinct()
+                .sorted(ranking)
+                .limit(MAX_SUGGESTIONS)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    // Больше лайков выше, при равенстве — больший ID
+    private static Comparator<Integer> ranking(Map<Integer, Long> likes) {
+        return Comparator.<Integer>comparingLong(filmId -> likes.getOrDefault(filmId, 0L)).reversed()
+                .thenComparing(Comparator.<Integer>reverseOrder());
+    }
+
+    private static class Node {
+        private static final char[] NO_LABELS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        // Символы детей по возрастанию и сами дети в том же порядке
+        private char[] labels = NO_LABELS;
+        private Node[] children = NO_CHILDREN;
+        // Фильмы, нормализованное название которых заканчивается в этом узле
+        private int[] films = EMPTY;
+        private int[] top = EMPTY;
+
+        Node child(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node childOrCreate(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insertAt = -index - 1;
+            Node child = new Node();
+            labels = insert(labels, insertAt, label);
+            Node[] grown = new Node[children.length + 1];
+            System.arraycopy(children, 0, grown, 0, insertAt);
+            grown[insertAt] = child;
+            System.arraycopy(children, insertAt, grown, insertAt + 1, children.length - insertAt);
+            children = grown;
+            return child;
+        }
+
+        void removeChild(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            if (index < 0) {
+                return;
+            }
+            char[] shrunkLabels = new char[labels.length - 1];
+            Node[] shrunk = new Node[children.length - 1];
+            System.arraycopy(labels, 0, shrunkLabels, 0, index);
+            System.arraycopy(labels, index + 1, shrunkLabels, index, labels.length - index - 1);
+            System.arraycopy(children, 0, shrunk, 0, index);
+            System.arraycopy(children, index + 1, shrunk, index, children.length - index - 1);
+            labels = shrunkLabels.length == 0 ? NO_LABELS : shrunkLabels;
+            children = shrunk.length == 0 ? NO_CHILDREN : shrunk;
+        }
+
+        void removeEmptyChildren() {
+            for (int i = labels.length - 1; i >= 0; i--) {
+                if (children[i].top.length == 0) {
+                    removeChild(labels[i]);
+                }
+            }
+        }
+
+        void addFilm(int filmId) {
+            for (int film : films) {
+                if (film == filmId) {
+                    return;
+                }
+            }
+            films = Arrays.copyOf(films, films.length + 1);
+            films[films.length - 1] = filmId;
+        }
+
+        void removeFilm(int filmId) {
+            for (int i = 0; i < films.length; i++) {
+                if (films[i] == filmId) {
+                    int[] shrunk = new int[films.length - 1];
+                    System.arraycopy(films, 0, shrunk, 0, i);
+                    System.arraycopy(films, i + 1, shrunk, i, films.length - i - 1);
+                    films = shrunk.length == 0 ? EMPTY : shrunk;
+                    return;
+                }
+            }
+        }
+
+        private static char[] insert(char[] array, int index, char value) {
+            char[] grown = new char[array.length + 1];
+            System.arraycopy(array, 0, grown, 0, index);
+            grown[index] = value;
+            System.arraycopy(array, index, grown, index + 1, array.length - index);
+            return grown;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Инвертированный индекс для полнотекстового поиска по названию и описанию фильмов.
+ * Строится при старте из хранилища постранично и обновляется сервисом при изменении фильмов.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FilmSearchIndex {
+    private static final int NAME_WEIGHT = 3;
+    private static final int DESCRIPTION_WEIGHT = 1;
+    private static final int REBUILD_PAGE_SIZE = 1000;
+    // Больше совпавших слов запроса, затем больший вес совпадений, затем больше лайков, затем новее
+    private static final Comparator<SearchHit> RANKING = Comparator.comparingInt(SearchHit::matchedTerms)
+            .thenComparingInt(SearchHit::weight)
+            .thenComparingLong(SearchHit::likes)
+            .thenComparingInt(SearchHit::filmId);
+
+    private final FilmStorage filmStorage;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Слово -> (ID фильма -> вес совпадения)
+    private Map<String, Map<Integer, Integer>> postings = new HashMap<>();
+    // ID фильма -> слова фильма, чтобы убрать его из индекса при изменении
+    private Map<Integer, Set<String>> filmTerms = new HashMap<>();
+
+    /**
+     * Строит индекс заново. Фильмы читаются страницами, чтобы не держать в памяти весь каталог сразу,
+     * а новый индекс собирается в стороне и подменяет текущий под коротким захватом блокировки.
+     */
+    @PostConstruct
+    public void rebuild() {
+        Map<String, Map<Integer, Integer>> newPostings = new HashMap<>();
+        Map<Integer, Set<String>> newFilmTerms = new HashMap<>();
+        int afterId = 0;
+        List<Film> page;
+        do {
+            page = filmStorage.findPage(afterId, REBUILD_PAGE_SIZE);
+            page.forEach(film -> addFilm(film, newPostings, newFilmTerms));
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == REBUILD_PAGE_SIZE);
+
+        lock.writeLock().lock();
+        try {
+            postings = newPostings;
+            filmTerms = newFilmTerms;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Поисковый индекс построен: фильмов {}, слов {}", newFilmTerms.size(), newPostings.size());
+    }
+
+    /**
+     * Добавляет фильм в индекс или заменяет его прежнюю версию.
+     */
+    public void index(Film film) {
+        lock.writeLock().lock();
+        try {
+            removeFilm(film.getId());
+            addFilm(film, postings, filmTerms);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int filmId) {
+        lock.writeLock().lock();
+        try {
+            removeFilm(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает ID не более чем limit фильмов, подходящих под запрос, от более релевантных к менее.
+     */
+    public List<Integer> search(String query, int limit) {
+        Set<String> terms = new LinkedHashSet<>(FilmTextNormalizer.tokenize(query));
+        if (terms.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // ID фильма -> {число совпавших слов, суммарный вес}
+        Map<Integer, int[]> matches = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (String term : terms) {
+                Map<Integer, Integer> films = postings.get(term);
+                if (films == null) {
+                    continue;
+                }
+                films.forEach((filmId, weight) -> {
+                    int[] match = matches.computeIfAbsent(filmId, id -> new int[2]);
+                    match[0]++;
+                    match[1] += weight;
+                });
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // Лайки всех найденных фильмов берем одним обращением к индексу популярности хранилища
+        int[] filmIds = matches.keySet().stream().mapToInt(Integer::intValue).toArray();
+        long[] likes = filmStorage.getLikesCounts(filmIds);
+
+        // Держим в куче только limit лучших результатов
+        PriorityQueue<SearchHit> best = new PriorityQueue<>(limit + 1, RANKING);
+        for (int i = 0; i < filmIds.length; i++) {
+            int[] match = matches.get(filmIds[i]);
+            best.add(new SearchHit(filmIds[i], match[0], match[1], likes[i]));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+
+        List<Integer> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            result.add(best.poll().filmId());
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private static void addFilm(Film film, Map<String, Map<Integer, Integer>> postings,
+                                Map<Integer, Set<String>> filmTerms) {
+        Map<String, Integer> weights = new HashMap<>();
+        FilmTextNormalizer.tokenize(film.getName()).forEach(term -> weights.merge(term, NAME_WEIGHT, Integer::sum));
+        FilmTextNormalizer.tokenize(film.getDescription())
+                .forEach(term -> weights.merge(term, DESCRIPTION_WEIGHT, Integer::sum));
+
+        weights.forEach((term, weight) -> postings.computeIfAbsent(term, t -> new HashMap<>())
+                .put(film.getId(), weight));
+        filmTerms.put(film.getId(), weights.keySet());
+    }
+
+    private void removeFilm(int filmId) {
+        Set<String> terms = filmTerms.remove(filmId);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms) {
+            Map<Integer, Integer> films = postings.get(term);
+            if (films != null) {
+                films.remove(filmId);
+                if (films.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    private record SearchHit(int filmId, int matchedTerms, int weight, long likes) {
+    }
+}
@@ -2,17 +2,22 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.GenreMpaRegistry;
 import ru.yandex.practicum.filmorate.storage.film.GenreMpaStorage;
+import ru.yandex.practicum.filmorate.storage.film.PopularFilmsFilter;
+import ru.yandex.practicum.filmorate.storage.film.TrendingWindow;
 
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -21,11 +26,18 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 @Slf4j
 public class FilmService {
-    @Qualifier("filmDbStorage")
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final int MAX_BATCH_SIZE = 10_000;
+    public static final int MAX_YEAR = 9999;
+    private static final LocalDate CINEMA_BIRTHDAY = LocalDate.of(1895, 12, 28);
+
     private final FilmStorage filmStorage;
-    private final UserService userService;
     private final GenreMpaStorage genreMpaStorage;
-    private final JdbcTemplate jdbcTemplate; // Добавляем JdbcTemplate для эффективных запросов
+    private final FilmSearchIndex filmSearchIndex;
+    private final FilmAutocompleteIndex filmAutocompleteIndex;
+    private final SimilarFilmsIndex similarFilmsIndex;
+    private final StatsService statsService;
 
     public Film create(Film film) {
         log.info("Создание фильма: name='{}', description length={}, releaseDate={}, duration={}, genres={}",
@@ -35,17 +47,59 @@ public class FilmService {
                 film.getDuration(),
                 film.getGenres() != null ? film.getGenres() : "null");
 
-        validateAndLoadGenres(film);
+        validateAndLoadGenres(film, genreMpaStorage.getRegistry());
 
         if (film.getMpa() != null) {
             log.info("Проверка MPA с ID: {}", film.getMpa().getId());
-            genreMpaStorage.getMpaRatingById(film.getMpa().getId());
+            film.setMpa(genreMpaStorage.getMpaRatingById(film.getMpa().getId()));
             log.info("MPA найден");
         }
 
         validateFilmForCreate(film);
 
-        return filmStorage.create(film);
+        Film created = filmStorage.create(film);
+        statsService.filmsCreated(1);
+        filmSearchIndex.index(created);
+        filmAutocompleteIndex.index(created);
+        return created;
+    }
+
+    public List<Film> createAll(List<Film> films) {
+        if (films == null || films.isEmpty()) {
+            throw new ValidationException("Список фильмов не может быть пустым");
+        }
+        if (films.size() > MAX_BATCH_SIZE) {
+            throw new ValidationException("За один запрос можно создать не более " + MAX_BATCH_SIZE + " фильмов");
+        }
+        log.info("Пакетное создание {} фильмов", films.size());
+
+        // Один снимок справочников на весь пакет
+        GenreMpaRegistry registry = genreMpaStorage.getRegistry();
+
+        for (int i = 0; i < films.size(); i++) {
+            Film film = films.get(i);
+            try {
+                validateFilmForCreate(film);
+                if (film.getMpa() != null) {
+                    MpaRating mpa = registry.findMpaRating(film.getMpa().getId());
+                    if (mpa == null) {
+                        throw new NotFoundException("MPA с ID " + film.getMpa().getId() + " не найден");
+                    }
+                    film.setMpa(mpa);
+                }
+                validateAndLoadGenres(film, registry);
+            } catch (ValidationException e) {
+                throw new ValidationException("Фильм №" + (i + 1) + ": " + e.getMessage());
+            } catch (NotFoundException e) {
+                throw new NotFoundException("Фильм №" + (i + 1) + ": " + e.getMessage());
+            }
+        }
+
+        List<Film> created = filmStorage.createAll(films);
+        statsService.filmsCreated(created.size());
+        created.forEach(filmSearchIndex::index);
+        created.forEach(filmAutocompleteIndex::index);
+        return created;
     }
 
     public Film update(Film film) {
@@ -55,13 +109,12 @@ public class FilmService {
         // 1. Проверяем и обновляем жанры одним запросом
         if (film.getGenres() != null) {
             log.info("Проверка жанров для обновления: {}", film.getGenres());
-            validateAndLoadGenres(film);
+            validateAndLoadGenres(film, genreMpaStorage.getRegistry());
             existingFilm.setGenres(film.getGenres());
         }
 
         if (film.getMpa() != null) {
-            genreMpaStorage.getMpaRatingById(film.getMpa().getId());
-            existingFilm.setMpa(film.getMpa());
+            existingFilm.setMpa(genreMpaStorage.getMpaRatingById(film.getMpa().getId()));
         }
 
         if (film.getName() != null) {
@@ -90,114 +143,168 @@ public class FilmService {
             existingFilm.setDuration(film.getDuration());
         }
 
-        return filmStorage.update(existingFilm);
+        Film updated = filmStorage.update(existingFilm);
+        filmSearchIndex.index(updated);
+        filmAutocompleteIndex.index(updated);
+        return updated;
     }
 
-    private void validateAndLoadGenres(Film film) {
+    private void validateAndLoadGenres(Film film, GenreMpaRegistry registry) {
         if (film.getGenres() == null || film.getGenres().isEmpty()) {
             return;
         }
 
         log.info("Проверка жанров: {}", film.getGenres());
 
-        // Собираем все ID жанров
-        Set<Integer> genreIds = film.getGenres().stream()
-                .map(Genre::getId)
-                .collect(Collectors.toSet());
-
-        if (genreIds.isEmpty()) {
-            return;
-        }
-
-        // Создаем строку с плейсхолдерами для SQL IN запроса
-        String placeholders = genreIds.stream()
-                .map(id -> "?")
-                .collect(Collectors.joining(","));
-
-        // Выполняем один запрос для получения всех жанров
-        String sql = String.format("SELECT id, name FROM genres WHERE id IN (%s)", placeholders);
-
-        List<Genre> foundGenres = jdbcTemplate.query(sql, (rs, rowNum) -> {
-            Genre genre = new Genre();
-            genre.setId(rs.getInt("id"));
-            genre.setName(rs.getString("name"));
-            return genre;
-        }, genreIds.toArray());
-
-        // Проверяем, все ли запрошенные жанры найдены
-        Set<Integer> foundGenreIds = foundGenres.stream()
-                .map(Genre::getId)
-                .collect(Collectors.toSet());
-
-        for (Integer genreId : genreIds) {
-            if (!foundGenreIds.contains(genreId)) {
-                throw new NotFoundException("Жанр с ID " + genreId + " не найден");
+        // Заменяем присланные жанры экземплярами из справочника (с правильными названиями)
+        Set<Genre> validatedGenres = new LinkedHashSet<>();
+        for (Genre genre : film.getGenres()) {
+            Genre knownGenre = registry.findGenre(genre.getId());
+            if (knownGenre == null) {
+                throw new NotFoundException("Жанр с ID " + genre.getId() + " не найден");
             }
+            validatedGenres.add(knownGenre);
         }
 
-        // Обновляем объекты жанров в фильме (чтобы были правильные названия)
-        // Создаем Map для быстрого поиска жанров по ID
-        java.util.Map<Integer, Genre> genreMap = foundGenres.stream()
-                .collect(Collectors.toMap(Genre::getId, genre -> genre));
-
-        Set<Genre> validatedGenres = film.getGenres().stream()
-                .map(genre -> genreMap.get(genre.getId()))
-                .collect(Collectors.toSet());
-
         film.setGenres(validatedGenres);
-        log.info("Проверено {} жанров, все найдены", genreIds.size());
+        log.info("Проверено {} жанров, все найдены", validatedGenres.size());
     }
 
     public List<Film> findAll() {
         return filmStorage.findAll();
     }
 
+    public CursorPage<Film> findPage(int afterId, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        if (afterId < 0) {
+            throw new ValidationException("Курсор страницы не может быть отрицательным");
+        }
+
+        // Запрашиваем на один фильм больше, чтобы узнать, есть ли следующая страница
+        List<Film> films = filmStorage.findPage(afterId, limit + 1);
+        if (films.size() <= limit) {
+            return new CursorPage<>(films, null);
+        }
+
+        List<Film> page = films.subList(0, limit);
+        return new CursorPage<>(page, page.get(limit - 1).getId());
+    }
+
     public Film findById(int id) {
         return filmStorage.findById(id)
                 .orElseThrow(() -> new NotFoundException("Фильм с ID " + id + " не найден"));
     }
 
-    public void addLike(int filmId, int userId) {
-        log.info("Service: Добавление лайка filmId={}, userId={}", filmId, userId);
+    public void delete(int id) {
+        log.info("Service: Удаление фильма с ID {}", id);
+        if (!filmStorage.existsById(id)) {
+            throw new NotFoundException("Фильм с ID " + id + " не найден");
+        }
+        long likes = filmStorage.getLikesCount(id);
+        filmStorage.delete(id);
+        statsService.filmDeleted(likes);
+        filmSearchIndex.remove(id);
+        filmAutocompleteIndex.remove(id);
+    }
 
-        // Проверяем существование фильма
-        findById(filmId); // Бросает NotFoundException если не найден
+    public List<Film> search(String query, int limit) {
+        if (query == null || query.isBlank()) {
+            throw new ValidationException("Поисковый запрос не может быть пустым");
+        }
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException("Размер выдачи должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        List<Film> films = filmStorage.findByIds(filmSearchIndex.search(query, limit));
+        log.info("Service: По запросу '{}' найдено {} фильмов", query, films.size());
+        return films;
+    }
 
-        // Проверяем существование пользователя
-        userService.findById(userId); // Бросает NotFoundException если не найден
+    public List<Film> autocomplete(String prefix, int limit) {
+        if (prefix == null || prefix.isBlank()) {
+            throw new ValidationException("Префикс не может быть пустым");
+        }
+        if (limit <= 0 || limit > FilmAutocompleteIndex.MAX_SUGGESTIONS) {
+            throw new ValidationException("Количество подсказок должно быть от 1 до "
+                    + FilmAutocompleteIndex.MAX_SUGGESTIONS);
+        }
+        return filmStorage.findByIds(filmAutocompleteIndex.complete(prefix, limit));
+    }
 
-        // Используем оптимизированный метод из FilmStorage
-        filmStorage.addLike(filmId, userId);
-        log.info("Service: Лайк добавлен успешно");
+    /**
+     * Похожие фильмы берутся из таблицы, которую заранее пересчитывает {@link SimilarFilmsJob}.
+     */
+    public List<Film> getSimilarFilms(int filmId, int count) {
+        if (count <= 0 || count > SimilarFilmsIndex.MAX_NEIGHBOURS) {
+            throw new ValidationException("Количество похожих фильмов должно быть от 1 до "
+                    + SimilarFilmsIndex.MAX_NEIGHBOURS);
+        }
+        if (!filmStorage.existsById(filmId)) {
+            throw new NotFoundException("Фильм с ID " + filmId + " не найден");
+        }
+        return filmStorage.findByIds(similarFilmsIndex.getSimilar(filmId, count));
     }
 
-    public void removeLike(int filmId, int userId) {
-        log.info("Service: Удаление лайка filmId={}, userId={}", filmId, userId);
+    public void addLike(int filmId, int userId) {
+        log.info("Service: Добавление лайка filmId={}, userId={}", filmId, userId);
 
-        // Проверяем существование фильма
-        findById(filmId); // Бросает NotFoundException если не найден
+        // Существование фильма и пользователя проверяет само хранилище в том же запросе,
+        // что и вставка лайка; при их отсутствии бросается NotFoundException
+        boolean added = filmStorage.addLike(filmId, userId);
+        if (added) {
+            statsService.likeAdded();
+            filmAutocompleteIndex.markLikesChanged(filmId);
+        }
+        log.info("Service: Лайк {}", added ? "добавлен успешно" : "уже был поставлен");
+    }
 
-        // Проверяем существование пользователя
-        userService.findById(userId); // Бросает NotFoundException если не найден
+    public void removeLike(int filmId, int userId) {
+        log.info("Service: Удаление лайка filmId={}, userId={}", filmId, userId);
 
-        // Используем оптимизированный метод из FilmStorage
-        filmStorage.removeLike(filmId, userId);
-        log.info("Service: Лайк удален успешно");
+        boolean removed = filmStorage.removeLike(filmId, userId);
+        if (removed) {
+            statsService.likeRemoved();
+            filmAutocompleteIndex.markLikesChanged(filmId);
+        }
+        log.info("Service: Лайк {}", removed ? "удален успешно" : "не найден");
     }
 
-    public List<Film> getPopularFilms(int count) {
-        log.info("Service: Запрос {} популярных фильмов", count);
+    public List<Film> getPopularFilms(int count, Integer genreId, Integer mpaId, Integer year) {
+        log.info("Service: Запрос {} популярных фильмов, genreId={}, mpaId={}, year={}", count, genreId, mpaId, year);
 
         // Проверяем валидность параметра count
         if (count <= 0) {
             throw new ValidationException("Количество фильмов должно быть положительным числом");
         }
+        if (genreId != null) {
+            genreMpaStorage.getGenreById(genreId);
+        }
+        if (mpaId != null) {
+            genreMpaStorage.getMpaRatingById(mpaId);
+        }
+        if (year != null && (year < CINEMA_BIRTHDAY.getYear() || year > MAX_YEAR)) {
+            throw new ValidationException("Год должен быть от " + CINEMA_BIRTHDAY.getYear() + " до " + MAX_YEAR);
+        }
 
-        List<Film> films = filmStorage.getPopularFilms(count);
+        List<Film> films = filmStorage.getPopularFilms(count, new PopularFilmsFilter(genreId, mpaId, year));
         log.info("Service: Получено {} фильмов из хранилища", films.size());
         return films;
     }
 
+    public List<Film> getTrendingFilms(String window, int count) {
+        log.info("Service: Запрос {} трендовых фильмов за {}", count, window);
+
+        if (count <= 0) {
+            throw new ValidationException("Количество фильмов должно быть положительным числом");
+        }
+        TrendingWindow trendingWindow = TrendingWindow.fromValue(window)
+                .orElseThrow(() -> new ValidationException("Окно должно быть одним из: " + Arrays.stream(
+                        TrendingWindow.values()).map(TrendingWindow::getValue).collect(Collectors.joining(", "))));
+
+        return filmStorage.getTrendingFilms(trendingWindow, count);
+    }
+
     private void validateFilmForCreate(Film film) {
         if (film.getName() == null || film.getName().isBlank()) {
             throw new ValidationException("Название не может быть пустым");
@@ -219,8 +326,7 @@ public class FilmService {
     }
 
     private void validateReleaseDate(LocalDate releaseDate) {
-        LocalDate minDate = LocalDate.of(1895, 12, 28);
-        if (releaseDate.isBefore(minDate)) {
+        if (releaseDate.isBefore(CINEMA_BIRTHDAY)) {
             throw new ValidationException("Дата релиза не может быть раньше 28 декабря 1895 года");
         }
     }
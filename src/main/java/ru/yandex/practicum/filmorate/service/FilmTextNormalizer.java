@@ -0,0 +1,86 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Нормализация текста для поиска: нижний регистр, «ё» приравнивается к «е»,
+ * все, кроме букв и цифр, считается разделителем. Для полнотекстового поиска у русских слов
+ * дополнительно отрезаются типичные окончания, чтобы «тумане» и «туман» совпадали.
+ */
+public final class FilmTextNormalizer {
+    // Окончания существительных, прилагательных и глаголов; сначала длинные, чтобы отрезать окончание целиком
+    private static final String[] RUSSIAN_ENDINGS = {
+            "иями", "ями", "ами", "ого", "его", "ому", "ему", "ыми", "ими", "ией", "иям", "иях",
+            "ать", "ять", "ить", "еть", "ешь", "ете", "ует", "ают", "яют",
+            "ий", "ый", "ой", "ая", "яя", "ое", "ее", "ые", "ие", "ую", "юю", "ам", "ям", "ах", "ях",
+            "ом", "ем", "ов", "ев", "ей", "ию", "ия", "ье", "ья", "ью", "ут", "ют", "ет", "ит",
+            "а", "я", "о", "е", "ы", "и", "у", "ю", "ь", "й"
+    };
+    // Короче основа не становится: иначе «лес» и «лето» свелись бы к одному корню
+    private static final int MIN_STEM_LENGTH = 3;
+
+    private FilmTextNormalizer() {
+    }
+
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean separator = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = normalizeChar(text.charAt(i));
+            if (Character.isLetterOrDigit(c)) {
+                if (separator && !normalized.isEmpty()) {
+                    normalized.append(' ');
+                }
+                normalized.append(c);
+                separator = false;
+            } else {
+                separator = true;
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Разбивает текст на нормализованные слова с отрезанными окончаниями в порядке следования.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        String normalized = normalize(text);
+        if (normalized.isEmpty()) {
+            return tokens;
+        }
+        for (String word : normalized.split(" ")) {
+            tokens.add(stem(word));
+        }
+        return tokens;
+    }
+
+    /**
+     * Легкий стемминг: отрезает у нормализованного русского слова самое длинное подходящее окончание,
+     * если остается основа не короче трех букв. Слова на латинице и числа не меняются.
+     */
+    public static String stem(String word) {
+        if (word.isEmpty() || !isCyrillic(word.charAt(word.length() - 1))) {
+            return word;
+        }
+        for (String ending : RUSSIAN_ENDINGS) {
+            if (word.endsWith(ending) && word.length() - ending.length() >= MIN_STEM_LENGTH) {
+                return word.substring(0, word.length() - ending.length());
+            }
+        }
+        return word;
+    }
+
+    private static boolean isCyrillic(char c) {
+        return c >= 'а' && c <= 'я';
+    }
+
+    private static char normalizeChar(char c) {
+        char lower = Character.toLowerCase(c);
+        return lower == 'ё' ? 'е' : lower;
+    }
+}
@@ -0,0 +1,137 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.roaringbitmap.RoaringBitmap;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Предложения друзей: друзья друзей, упорядоченные по числу общих друзей.
+ * Обход графа дружбы ограничен двумя шагами и {@link #MAX_FAN_OUT} связями на каждом шаге,
+ * поэтому пользователи с огромным числом друзей не раздувают ни время ответа, ни память.
+ * Если связей больше, на каждом шаге берется случайная выборка, а не друзья с меньшими ID:
+ * для таких пользователей счет общих друзей становится оценкой.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FriendSuggestionService {
+    public static final int MAX_COUNT = 100;
+    private static final int MAX_FAN_OUT = 1_000;
+
+    private final UserStorage userStorage;
+
+    public List<User> getSuggestions(int userId, int count) {
+        if (count <= 0 || count > MAX_COUNT) {
+            throw new ValidationException("Количество предложений должно быть от 1 до " + MAX_COUNT);
+        }
+        if (!userStorage.existsById(userId)) {
+            throw new NotFoundException("Пользователь с ID " + userId + " не найден");
+        }
+
+        FriendGraph friendGraph = userStorage.getFriendGraph();
+        RoaringBitmap friends = friendGraph.getFriends(userId);
+        Random random = ThreadLocalRandom.current();
+        RoaringBitmap sampled = new RoaringBitmap();
+        friendGraph.forEachFriend(userId, MAX_FAN_OUT, random, sampled::add);
+        int[] firstHop = sampled.toArray();
+
+        // Каждый друг друга получает по очку за каждого общего друга
+        IntCounter mutualFriends = new IntCounter();
+        for (int friendId : firstHop) {
+            friendGraph.forEachFriend(friendId, MAX_FAN_OUT, random, candidate -> {
+                if (candidate != userId && !friends.contains(candidate)) {
+                    mutualFriends.increment(candidate);
+                }
+            });
+        }
+
+        List<Integer> userIds = mutualFriends.top(count);
+        log.info("Предложения друзей для пользователя {}: друзей {}, кандидатов {}, выдано {}",
+                userId, firstHop.length, mutualFriends.size(), userIds.size());
+        return userStorage.findByIds(userIds);
+    }
+
+    /**
+     * Счетчики int → int с открытой адресацией: без упаковки ключей и значений и без объекта на запись.
+     * Ключ 0 зарезервирован под пустую ячейку, ID пользователей начинаются с 1.
+     */
+    private static final class IntCounter {
+        private int[] keys = new int[64];
+        private int[] counts = new int[64];
+        private int size;
+
+        void increment(int key) {
+            if (size * 2 >= keys.length) {
+                resize();
+            }
+            int slot = slot(keys, key);
+            if (keys[slot] == 0) {
+                keys[slot] = key;
+                size++;
+            }
+            counts[slot]++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        // Больше общих друзей — выше; при равенстве меньший ID раньше
+        List<Integer> top(int limit) {
+            PriorityQueue<int[]> heap = new PriorityQueue<>(limit + 1,
+                    (a, b) -> a[1] != b[1] ? Integer.compare(a[1], b[1]) : Integer.compare(b[0], a[0]));
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) {
+                    heap.offer(new int[]{keys[i], counts[i]});
+                    if (heap.size() > limit) {
+                        heap.poll();
+                    }
+                }
+            }
+            List<Integer> result = new ArrayList<>(heap.size());
+            while (!heap.isEmpty()) {
+                result.add(heap.poll()[0]);
+            }
+            Collections.reverse(result);
+            return result;
+        }
+
+        private void resize() {
+            int[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new int[oldKeys.length * 2];
+            counts = new int[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = slot(keys, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+
+        // Линейное пробирование; длина массива — степень двойки
+        private static int slot(int[] keys, int key) {
+            int mask = keys.length - 1;
+            int hash = key * 0x9E3779B9;
+            int slot = (hash ^ hash >>> 16) & mask;
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+}
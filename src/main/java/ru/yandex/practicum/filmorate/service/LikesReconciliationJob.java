@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LikesReconciliationJob {
+    private final FilmStorage filmStorage;
+    private final FilmAutocompleteIndex filmAutocompleteIndex;
+
+    @Scheduled(fixedDelayString = "${filmorate.likes.reconcile-interval:PT1H}",
+            initialDelayString = "${filmorate.likes.reconcile-interval:PT1H}")
+    public void reconcile() {
+        log.debug("Сверка счетчиков лайков");
+        int repaired = filmStorage.reconcileLikesCount();
+        log.info("Сверка счетчиков лайков завершена, исправлено фильмов: {}", repaired);
+        // Лайки, снятые удалением пользователя или записанные после таймаута, мимо сервиса не отмечаются
+        // в автодополнении; перестройка раз в интервал сверки возвращает спискам точный порядок
+        filmAutocompleteIndex.rebuild();
+    }
+}
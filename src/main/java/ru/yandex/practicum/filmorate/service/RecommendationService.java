@@ -0,0 +1,119 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.roaringbitmap.RoaringBitmap;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikeGraph;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Персональные рекомендации по графу лайков: находим пользователей с наибольшим числом общих лайков
+ * и предлагаем фильмы, которые понравились им, но еще не понравились целевому пользователю.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RecommendationService {
+    public static final int MAX_COUNT = 100;
+    // Ограничения держат время ответа предсказуемым даже для пользователей с тысячами лайков
+    private static final int MAX_CANDIDATES = 2_000;
+    // Фильмов пользователя, с которых начинается поиск соседей
+    private static final int MAX_SOURCE_FILMS = 1_000;
+    private static final int MAX_NEIGHBOURS = 50;
+
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+
+    public List<Film> getRecommendations(int userId, int count) {
+        if (count <= 0 || count > MAX_COUNT) {
+            throw new ValidationException("Количество рекомендаций должно быть от 1 до " + MAX_COUNT);
+        }
+        if (!userStorage.existsById(userId)) {
+            throw new NotFoundException("Пользователь с ID " + userId + " не найден");
+        }
+
+        LikeGraph likeGraph = filmStorage.getLikeGraph();
+        RoaringBitmap likedFilms = likeGraph.getFilms(userId);
+        if (likedFilms.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // Оценка похожести кандидатов идет параллельно в общем fork-join пуле
+        List<Neighbour> neighbours = collectCandidates(likeGraph, likedFilms, userId).parallelStream()
+                .map(candidate -> new Neighbour(candidate, likeGraph.countCommonFilms(candidate, likedFilms)))
+                .filter(neighbour -> neighbour.commonFilms() > 0)
+                .sorted(Comparator.comparingInt(Neighbour::commonFilms).reversed()
+                        .thenComparingInt(Neighbour::userId))
+                .limit(MAX_NEIGHBOURS)
+                .toList();
+
+        // Фильм набирает очки от каждого соседа, лайкнувшего его, пропорционально похожести соседа
+        Map<Integer, Long> scores = new HashMap<>();
+        for (Neighbour neighbour : neighbours) {
+            RoaringBitmap films = likeGraph.getFilms(neighbour.userId());
+            films.andNot(likedFilms);
+            films.forEach((int filmId) -> scores.merge(filmId, (long) neighbour.commonFilms(), Long::sum));
+        }
+
+        // Лайки оцененных фильмов для разбора равенств читаем одним обращением, а не в каждом сравнении
+        int[] scored = scores.keySet().stream().mapToInt(Integer::intValue).toArray();
+        long[] likes = filmStorage.getLikesCounts(scored);
+        List<Integer> filmIds = IntStream.range(0, scored.length)
+                .boxed()
+                .sorted(Comparator.<Integer>comparingLong(i -> scores.get(scored[i])).reversed()
+                        .thenComparing(Comparator.<Integer>comparingLong(i -> likes[i]).reversed())
+                        .thenComparing(Comparator.<Integer>comparingInt(i -> scored[i]).reversed()))
+                .limit(count)
+                .map(i -> scored[i])
+                .toList();
+        log.info("Рекомендации для пользователя {}: соседей {}, фильмов {}", userId, neighbours.size(), filmIds.size());
+        return filmStorage.findByIds(filmIds);
+    }
+
+    // Начинаем с самых редких фильмов пользователя: их поклонники ближе по вкусу, а множества меньше.
+    // Число лайкнувших читается один раз на фильм, и не больше чем для MAX_SOURCE_FILMS фильмов
+    private Set<Integer> collectCandidates(LikeGraph likeGraph, RoaringBitmap likedFilms, int userId) {
+        int[] films = likedFilms.limit(MAX_SOURCE_FILMS).toArray();
+        int[] likers = new int[films.length];
+        for (int i = 0; i < films.length; i++) {
+            likers[i] = likeGraph.countLikers(films[i]);
+        }
+        int[] order = IntStream.range(0, films.length)
+                .boxed()
+                .sorted(Comparator.comparingInt(i -> likers[i]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        Set<Integer> candidates = new LinkedHashSet<>();
+        for (int i : order) {
+            if (candidates.size() >= MAX_CANDIDATES) {
+                break;
+            }
+            // Обход без копирования множества: у популярного фильма лайкнувших могут быть миллионы.
+            // Лишний один — на случай, если среди них сам пользователь
+            likeGraph.forEachLiker(films[i], MAX_CANDIDATES - candidates.size() + 1, liker -> {
+                if (liker != userId && candidates.size() < MAX_CANDIDATES) {
+                    candidates.add(liker);
+                }
+            });
+        }
+        return candidates;
+    }
+
+    private record Neighbour(int userId, int commonFilms) {
+    }
+}
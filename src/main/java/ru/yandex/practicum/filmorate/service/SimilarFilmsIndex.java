@@ -0,0 +1,146 @@
+package ru.yandex.practicum.filmorate.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikeGraph;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Предрассчитанная таблица похожих фильмов: для каждого фильма хранится не более {@link #MAX_NEIGHBOURS}
+ * соседей по коэффициенту Жаккара множеств лайкнувших. Таблица пересчитывается фоновой задачей
+ * и только для фильмов, чьи лайки менялись с прошлого запуска, а также для их соседей.
+ */
+@Component
+@Slf4j
+public class SimilarFilmsIndex {
+    public static final int MAX_NEIGHBOURS = 20;
+    private static final Neighbours EMPTY = new Neighbours(new int[0], new float[0]);
+
+    private final FilmStorage filmStorage;
+    private final Map<Integer, Neighbours> table = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger processed = new AtomicInteger();
+    private final Timer refreshTimer;
+    private final Counter recomputedCounter;
+
+    public SimilarFilmsIndex(FilmStorage filmStorage, MeterRegistry meterRegistry) {
+        this.filmStorage = filmStorage;
+        this.refreshTimer = Timer.builder("filmorate.similar.refresh")
+                .description("Время пересчета таблицы похожих фильмов")
+                .register(meterRegistry);
+        this.recomputedCounter = Counter.builder("filmorate.similar.recomputed")
+                .description("Сколько фильмов пересчитано")
+                .register(meterRegistry);
+        Gauge.builder("filmorate.similar.progress", this, SimilarFilmsIndex::getProgress)
+                .description("Доля обработанных фильмов в текущем пересчете")
+                .register(meterRegistry);
+        Gauge.builder("filmorate.similar.films", table, Map::size)
+                .description("Фильмов в таблице похожих")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Пересчитывает соседей для фильмов, затронутых изменениями лайков с прошлого вызова.
+     *
+     * @return сколько фильмов пересчитано
+     */
+    public synchronized int refresh() {
+        LikeGraph likeGraph = filmStorage.getLikeGraph();
+        Set<Integer> changed = likeGraph.drainChangedFilms();
+        if (changed.isEmpty()) {
+            return 0;
+        }
+
+        return refreshTimer.record(() -> {
+            // Изменение лайкнувших фильма меняет его сходство со всеми фильмами, с которыми у него общие зрители,
+            // а также с теми, в чьих списках он уже был
+            Set<Integer> affected = new HashSet<>(changed);
+            changed.forEach(filmId -> affected.addAll(likeGraph.countCoLikes(filmId).keySet()));
+            table.forEach((filmId, neighbours) -> {
+                if (neighbours.containsAny(changed)) {
+                    affected.add(filmId);
+                }
+            });
+
+            pending.set(affected.size());
+            processed.set(0);
+            affected.parallelStream().forEach(filmId -> {
+                Neighbours neighbours = compute(likeGraph, filmId);
+                if (neighbours.filmIds().length == 0) {
+                    table.remove(filmId);
+                } else {
+                    table.put(filmId, neighbours);
+                }
+                processed.incrementAndGet();
+            });
+            recomputedCounter.increment(affected.size());
+            log.info("Таблица похожих фильмов обновлена: изменилось {}, пересчитано {}, всего {}",
+                    changed.size(), affected.size(), table.size());
+            return affected.size();
+        });
+    }
+
+    /**
+     * Возвращает ID не более чем limit самых похожих фильмов, от более похожих к менее.
+     */
+    public List<Integer> getSimilar(int filmId, int limit) {
+        int[] filmIds = table.getOrDefault(filmId, EMPTY).filmIds();
+        return Arrays.stream(filmIds, 0, Math.min(limit, filmIds.length)).boxed().toList();
+    }
+
+    /**
+     * @return доля обработанных фильмов в последнем пересчете, 1 если пересчет не идет
+     */
+    public double getProgress() {
+        int total = pending.get();
+        return total == 0 ? 1.0 : (double) processed.get() / total;
+    }
+
+    private static Neighbours compute(LikeGraph likeGraph, int filmId) {
+        int likers = likeGraph.countLikers(filmId);
+        if (likers == 0) {
+            return EMPTY;
+        }
+        // Жаккар: |A ∩ B| / |A ∪ B|; при равенстве выше фильм с большим ID
+        List<Map.Entry<Integer, Float>> best = likeGraph.countCoLikes(filmId).entrySet().stream()
+                .map(entry -> Map.entry(entry.getKey(), (float) entry.getValue()
+                        / (likers + likeGraph.countLikers(entry.getKey()) - entry.getValue())))
+                .sorted(Map.Entry.<Integer, Float>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder())))
+                .limit(MAX_NEIGHBOURS)
+                .toList();
+
+        int[] filmIds = new int[best.size()];
+        float[] scores = new float[best.size()];
+        for (int i = 0; i < best.size(); i++) {
+            filmIds[i] = best.get(i).getKey();
+            scores[i] = best.get(i).getValue();
+        }
+        return new Neighbours(filmIds, scores);
+    }
+
+    // Массивы вместо коллекций: на каждый фильм два небольших массива без упаковки
+    private record Neighbours(int[] filmIds, float[] scores) {
+        boolean containsAny(Set<Integer> films) {
+            for (int filmId : filmIds) {
+                if (films.contains(filmId)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SimilarFilmsJob {
+    private final SimilarFilmsIndex similarFilmsIndex;
+
+    @Scheduled(fixedDelayString = "${filmorate.similar-films.refresh-interval:PT5M}",
+            initialDelayString = "${filmorate.similar-films.initial-delay:PT10S}")
+    public void refresh() {
+        log.debug("Пересчет таблицы похожих фильмов");
+        similarFilmsIndex.refresh();
+    }
+}
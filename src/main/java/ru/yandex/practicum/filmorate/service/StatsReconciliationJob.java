@@ -0,0 +1,21 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StatsReconciliationJob {
+    private final StatsService statsService;
+
+    @Scheduled(fixedDelayString = "${filmorate.stats.reconcile-interval:PT10M}",
+            initialDelayString = "${filmorate.stats.reconcile-interval:PT10M}")
+    public void reconcile() {
+        log.debug("Сверка счетчиков статистики");
+        int repaired = statsService.reconcile();
+        log.info("Сверка счетчиков статистики завершена, исправлено счетчиков: {}", repaired);
+    }
+}
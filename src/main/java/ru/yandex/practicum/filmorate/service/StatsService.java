@@ -1,37 +1,99 @@
 package ru.yandex.practicum.filmorate.service;
 
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
-import org.springframework.jdbc.core.JdbcTemplate;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.model.Stats;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Общая статистика из счетчиков в памяти: ответ не зависит от размера таблиц.
+ * Счетчики заполняются из хранилищ при старте, сервисы меняют их при каждом изменении данных,
+ * а {@link StatsReconciliationJob} периодически исправляет накопившиеся расхождения.
+ */
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class StatsService {
-    private final JdbcTemplate jdbcTemplate;
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final AtomicLong filmCount = new AtomicLong();
+    private final AtomicLong userCount = new AtomicLong();
+    private final AtomicLong totalLikes = new AtomicLong();
+    // Записи во всех списках друзей: подтвержденная дружба — две, запрос — одна
+    private final AtomicLong totalFriendships = new AtomicLong();
 
     public Stats getStats() {
-        // Получаем количество фильмов
-        String filmsSql = "SELECT COUNT(*) FROM films";
-        Long filmCount = jdbcTemplate.queryForObject(filmsSql, Long.class);
-
-        // Получаем количество пользователей
-        String usersSql = "SELECT COUNT(*) FROM users";
-        Long userCount = jdbcTemplate.queryForObject(usersSql, Long.class);
-
-        // Получаем общее количество лайков
-        String likesSql = "SELECT COUNT(*) FROM film_likes";
-        Long totalLikes = jdbcTemplate.queryForObject(likesSql, Long.class);
-
-        // Получаем общее количество дружеских связей
-        String friendsSql = "SELECT COUNT(*) FROM friendships";
-        Long totalFriendships = jdbcTemplate.queryForObject(friendsSql, Long.class);
-
-        return new Stats(
-                filmCount != null ? filmCount : 0,
-                userCount != null ? userCount : 0,
-                totalLikes != null ? totalLikes : 0,
-                totalFriendships != null ? totalFriendships : 0
-        );
-    }
-}
\ No newline at end of file
+        return new Stats(filmCount.get(), userCount.get(), totalLikes.get(), totalFriendships.get());
+    }
+
+    @PostConstruct
+    public void seed() {
+        reconcile();
+        log.info("Счетчики статистики заполнены: {}", getStats());
+    }
+
+    /**
+     * Сверяет счетчики с хранилищами.
+     *
+     * @return число исправленных счетчиков
+     */
+    public int reconcile() {
+        int repaired = repair("фильмов", filmCount, filmStorage.getTotalFilmsCount())
+                + repair("пользователей", userCount, userStorage.getTotalUsersCount())
+                + repair("лайков", totalLikes, filmStorage.getTotalLikesCount())
+                + repair("друзей", totalFriendships, userStorage.getTotalFriendLinksCount());
+        log.debug("Счетчики статистики сверены: {}", getStats());
+        return repaired;
+    }
+
+    public void filmsCreated(int count) {
+        filmCount.addAndGet(count);
+    }
+
+    // Лайки удаляются вместе с фильмом
+    public void filmDeleted(long likes) {
+        filmCount.decrementAndGet();
+        totalLikes.addAndGet(-likes);
+    }
+
+    public void likeAdded() {
+        totalLikes.incrementAndGet();
+    }
+
+    public void likeRemoved() {
+        totalLikes.decrementAndGet();
+    }
+
+    public void userCreated() {
+        userCount.incrementAndGet();
+    }
+
+    public void friendAdded() {
+        totalFriendships.incrementAndGet();
+    }
+
+    public void friendRemoved() {
+        totalFriendships.decrementAndGet();
+    }
+
+    // Добавляем разницу, а не перезаписываем счетчик, чтобы не затереть изменения, пришедшие во время сверки.
+    // Изменение между подсчетом в хранилище и чтением счетчика может дать ложное расхождение —
+    // его исправит следующая сверка
+    private int repair(String name, AtomicLong counter, long actual) {
+        long current = counter.get();
+        long drift = actual - current;
+        if (drift == 0) {
+            return 0;
+        }
+        counter.addAndGet(drift);
+        if (current != 0) {
+            log.warn("Счетчик {} разошелся с хранилищем на {}, исправлен", name, drift);
+        }
+        return 1;
+    }
+}
@@ -4,6 +4,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
@@ -12,14 +13,20 @@ import java.util.*;
 @Service
 @RequiredArgsConstructor
 public class UserService {
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+
     private final UserStorage userStorage;
+    private final StatsService statsService;
 
     public User create(User user) {
         validateUserForCreate(user);
         if (user.getName() == null || user.getName().isBlank()) {
             user.setName(user.getLogin());
         }
-        return userStorage.create(user);
+        User created = userStorage.create(user);
+        statsService.userCreated();
+        return created;
     }
 
     public User update(User user) {
@@ -62,41 +69,95 @@ public class UserService {
         return userStorage.findAll();
     }
 
+    public CursorPage<User> findPage(int afterId, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        if (afterId < 0) {
+            throw new ValidationException("Курсор страницы не может быть отрицательным");
+        }
+
+        // Запрашиваем на одного пользователя больше, чтобы узнать, есть ли следующая страница
+        List<User> users = userStorage.findPage(afterId, limit + 1);
+        if (users.size() <= limit) {
+            return new CursorPage<>(users, null);
+        }
+
+        List<User> page = users.subList(0, limit);
+        return new CursorPage<>(page, page.get(limit - 1).getId());
+    }
+
     public User findById(int id) {
         return userStorage.findById(id)
                 .orElseThrow(() -> new NotFoundException("Пользователь с ID " + id + " не найден"));
     }
 
     public void addFriend(int userId, int friendId) {
-        User user = findById(userId);
-        User friend = findById(friendId);
+        checkUserExists(userId);
+        checkUserExists(friendId);
 
         if (userId == friendId) {
             throw new ValidationException("Пользователь не может добавить себя в друзья");
         }
 
-        userStorage.addFriend(userId, friendId);
+        if (userStorage.addFriend(userId, friendId)) {
+            statsService.friendAdded();
+        }
     }
 
     public void removeFriend(int userId, int friendId) {
-        User user = findById(userId);
-        User friend = findById(friendId);
+        checkUserExists(userId);
+        checkUserExists(friendId);
 
-        userStorage.removeFriend(userId, friendId);
+        if (userStorage.removeFriend(userId, friendId)) {
+            statsService.friendRemoved();
+        }
+    }
+
+    public void acceptFriendRequest(int userId, int requesterId) {
+        checkUserExists(userId);
+        checkUserExists(requesterId);
+
+        if (!userStorage.acceptFriendRequest(userId, requesterId)) {
+            throw new NotFoundException("Запрос дружбы от пользователя " + requesterId + " не найден");
+        }
+        statsService.friendAdded();
+    }
+
+    public void declineFriendRequest(int userId, int requesterId) {
+        checkUserExists(userId);
+        checkUserExists(requesterId);
+
+        if (!userStorage.declineFriendRequest(userId, requesterId)) {
+            throw new NotFoundException("Запрос дружбы от пользователя " + requesterId + " не найден");
+        }
+        statsService.friendRemoved();
+    }
+
+    public List<User> getFriendRequests(int userId) {
+        checkUserExists(userId);
+        return userStorage.getFriendRequests(userId);
     }
 
     public List<User> getFriends(int userId) {
-        User user = findById(userId);
+        checkUserExists(userId);
         return userStorage.getFriends(userId);
     }
 
     public List<User> getCommonFriends(int userId, int otherId) {
-        User user = findById(userId);
-        User otherUser = findById(otherId);
+        checkUserExists(userId);
+        checkUserExists(otherId);
 
         return userStorage.getCommonFriends(userId, otherId);
     }
 
+    // Для проверки достаточно существования: полная загрузка тянет за собой весь список друзей
+    private void checkUserExists(int id) {
+        if (!userStorage.existsById(id)) {
+            throw new NotFoundException("Пользователь с ID " + id + " не найден");
+        }
+    }
+
     private void validateUserForCreate(User user) {
         if (user.getEmail() == null || user.getEmail().isBlank() || !user.getEmail().contains("@")) {
             throw new ValidationException("Email не может быть пустым и должен содержать @");
@@ -0,0 +1,51 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Выборка строк по списку ID через {@code IN (?, ...)} порциями фиксированного размера.
+ * Число параметров в запросе не растет со списком, а текстов запроса — не больше десятка:
+ * размер порции — степень двойки до {@link #CHUNK_SIZE}, недостающие места заполняются последним ID.
+ */
+public final class ChunkedIdQuery {
+    public static final int CHUNK_SIZE = 512;
+
+    private ChunkedIdQuery() {
+    }
+
+    /**
+     * @param sqlTemplate запрос с {@code %s} на месте списка параметров внутри {@code IN (...)}
+     * @return строки в порядке, который вернула база, по порциям подряд; порядок ids не сохраняется
+     */
+    public static <T> List<T> query(JdbcTemplate jdbcTemplate, String sqlTemplate, RowMapper<T> rowMapper,
+                                    Collection<Integer> ids) {
+        Object[] distinct = ids.stream().distinct().toArray();
+        if (distinct.length == 0) {
+            return new ArrayList<>();
+        }
+        int size = chunkSize(distinct.length);
+        String sql = String.format(sqlTemplate, String.join(",", Collections.nCopies(size, "?")));
+        List<T> result = new ArrayList<>(distinct.length);
+        for (int from = 0; from < distinct.length; from += size) {
+            Object[] chunk = Arrays.copyOfRange(distinct, from, from + size);
+            int filled = Math.min(size, distinct.length - from);
+            Arrays.fill(chunk, filled, size, chunk[filled - 1]);
+            result.addAll(jdbcTemplate.query(sql, rowMapper, chunk));
+        }
+        return result;
+    }
+
+    private static int chunkSize(int count) {
+        if (count >= CHUNK_SIZE) {
+            return CHUNK_SIZE;
+        }
+        return count == 1 ? 1 : Integer.highestOneBit(count - 1) << 1;
+    }
+}
@@ -0,0 +1,203 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Кэш фильмов поверх другого хранилища (read-through).
+ * В кэше лежат только данные фильма; счетчик лайков при каждом чтении берется из хранилища,
+ * поэтому лайки не вытесняют записи. Записи сбрасываются после update и delete.
+ */
+@Slf4j
+public class CachingFilmStorage implements FilmStorage {
+    public static final String CACHE_NAME = "films";
+
+    private final FilmStorage delegate;
+    private final Cache<Integer, Film> cache;
+    // Растет при каждом сбросе записей; пакетная загрузка не кладет в кэш результат, если за время чтения был сброс
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public CachingFilmStorage(FilmStorage delegate, long maxSize, Duration ttl, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    @Override
+    public Film create(Film film) {
+        return delegate.create(film);
+    }
+
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        return delegate.createAll(films);
+    }
+
+    @Override
+    public Film update(Film film) {
+        Film updated = delegate.update(film);
+        // Сбрасываем запись после фиксации в хранилище. Если в этот момент идет загрузка того же ключа,
+        // invalidate дождется ее окончания и удалит загруженное значение, так что старые данные не вернутся
+        invalidate(film.getId());
+        return updated;
+    }
+
+    @Override
+    public List<Film> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<Film> findPage(int afterId, int limit) {
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public Optional<Film> findById(int id) {
+        Film cached = cache.get(id, key -> delegate.findById(key).orElse(null));
+        return Optional.ofNullable(cached).map(this::toResult);
+    }
+
+    @Override
+    public List<Film> findByIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<Integer, Film> found = new HashMap<>(cache.getAllPresent(ids));
+        List<Integer> missing = ids.stream()
+                .filter(id -> !found.containsKey(id))
+                .distinct()
+                .collect(Collectors.toList());
+        if (!missing.isEmpty()) {
+            long version = invalidations.get();
+            Map<Integer, Film> loaded = delegate.findByIds(missing).stream()
+                    .collect(Collectors.toMap(Film::getId, film -> film));
+            found.putAll(loaded);
+            if (invalidations.get() == version) {
+                loaded.forEach(cache.asMap()::putIfAbsent);
+                // Сброс мог случиться между проверкой и записью — тогда убираем то, что успели положить
+                if (invalidations.get() != version) {
+                    loaded.keySet().forEach(cache::invalidate);
+                }
+            }
+        }
+
+        return ids.stream()
+                .map(found::get)
+                .filter(Objects::nonNull)
+                .map(this::toResult)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void delete(int id) {
+        delegate.delete(id);
+        invalidate(id);
+    }
+
+    @Override
+    public boolean existsById(int id) {
+        return cache.getIfPresent(id) != null || delegate.existsById(id);
+    }
+
+    @Override
+    public boolean addLike(int filmId, int userId) {
+        // Счетчик лайков в кэше не хранится, сбрасывать запись не нужно
+        return delegate.addLike(filmId, userId);
+    }
+
+    @Override
+    public boolean removeLike(int filmId, int userId) {
+        return delegate.removeLike(filmId, userId);
+    }
+
+    @Override
+    public List<Film> getPopularFilms(int count, PopularFilmsFilter filter) {
+        return findByIds(delegate.getPopularFilmIds(count, filter));
+    }
+
+    @Override
+    public List<Integer> getPopularFilmIds(int count, PopularFilmsFilter filter) {
+        return delegate.getPopularFilmIds(count, filter);
+    }
+
+    @Override
+    public List<Film> getTrendingFilms(TrendingWindow window, int count) {
+        return findByIds(delegate.getTrendingFilmIds(window, count));
+    }
+
+    @Override
+    public List<Integer> getTrendingFilmIds(TrendingWindow window, int count) {
+        return delegate.getTrendingFilmIds(window, count);
+    }
+
+    @Override
+    public long getLikesCount(int filmId) {
+        return delegate.getLikesCount(filmId);
+    }
+
+    @Override
+    public long[] getLikesCounts(int[] filmIds) {
+        return delegate.getLikesCounts(filmIds);
+    }
+
+    @Override
+    public LikeGraph getLikeGraph() {
+        return delegate.getLikeGraph();
+    }
+
+    @Override
+    public int getTotalFilmsCount() {
+        return delegate.getTotalFilmsCount();
+    }
+
+    @Override
+    public long getTotalLikesCount() {
+        return delegate.getTotalLikesCount();
+    }
+
+    @Override
+    public int reconcileLikesCount() {
+        int repaired = delegate.reconcileLikesCount();
+        // Сверка чинит расхождения с БД, заодно избавляемся от записей, измененных в обход приложения
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+        return repaired;
+    }
+
+    private void invalidate(int id) {
+        invalidations.incrementAndGet();
+        cache.invalidate(id);
+        log.debug("Фильм с ID {} удален из кэша", id);
+    }
+
+    // Наружу отдаем копию: вызывающий код может менять фильм, а запись в кэше должна остаться прежней.
+    // Жанры и рейтинг MPA — общие экземпляры из справочника, их не копируем
+    private Film toResult(Film cached) {
+        return cached.toBuilder()
+                .rate((int) delegate.getLikesCount(cached.getId()))
+                .genres(cached.getGenres() == null ? new LinkedHashSet<>() : new LinkedHashSet<>(cached.getGenres()))
+                .build();
+    }
+}
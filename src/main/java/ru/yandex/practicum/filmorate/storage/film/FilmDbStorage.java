@@ -1,20 +1,40 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.storage.ChunkedIdQuery;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.Map;
 
@@ -22,52 +42,170 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class FilmDbStorage implements FilmStorage {
     private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final GenreMpaStorage genreMpaStorage;
+    // Индексы подменяются целиком при перезагрузке, изменения лайков идут через applyToIndexes
+    private volatile LikeIndexes likeIndexes = new LikeIndexes();
+    // Общая блокировка берется изменениями индексов, монопольная — только на время подмены индексов
+    private final ReadWriteLock indexSwapLock = new ReentrantReadWriteLock();
+    // Изменения индексов, сделанные во время перезагрузки; null, если перезагрузка не идет
+    private volatile Queue<Consumer<LikeIndexes>> reloadJournal;
+    private volatile LikeWriteBatcher likeWriteBatcher;
     public static final LocalDate CINEMA_BIRTHDAY = LocalDate.of(1895, 12, 28);
+    private static final String INCREMENT_LIKES_SQL = "UPDATE films SET likes_count = likes_count + ? WHERE id = ?";
+    // Существование фильма и пользователя проверяют внешние ключи, повторный лайк отсекает NOT EXISTS
+    private static final String INSERT_LIKE_SQL = "INSERT INTO film_likes (film_id, user_id, created_at) " +
+            "SELECT CAST(? AS INTEGER), CAST(? AS INTEGER), CAST(? AS TIMESTAMP) " +
+            "WHERE NOT EXISTS (SELECT 1 FROM film_likes WHERE film_id = ? AND user_id = ?)";
+    // Количество лайков хранится в films.likes_count, ID жанров агрегируются в строку "id,id,...";
+    // названия жанров и рейтинга MPA берутся из справочника в памяти
+    private static final String SELECT_FILMS_SQL = "SELECT f.*, " +
+            "(SELECT LISTAGG(fg.genre_id, '" + FilmRowMapper.GENRE_SEPARATOR + "') " +
+            "WITHIN GROUP (ORDER BY fg.genre_id) FROM film_genres fg WHERE fg.film_id = f.id) AS genre_ids " +
+            "FROM films f ";
+    private final RowMapper<Film> filmRowMapper = new FilmRowMapper();
+    private static final String INSERT_FILM_SQL = "INSERT INTO films (name, description, release_date, duration, " +
+            "mpa_rating_id) VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_FILM_GENRE_SQL = "INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)";
+    private static final String DELETE_LIKE_SQL = "DELETE FROM film_likes WHERE film_id = ? AND user_id = ?";
+
+    /**
+     * Строит индексы лайков заново по таблицам и подменяет ими текущие. Пока идет загрузка, читатели
+     * работают со старыми индексами, а изменения лайков попадают и в них, и в журнал перезагрузки;
+     * перед подменой журнал применяется к новым индексам, поэтому параллельные лайки не теряются.
+     */
+    @PostConstruct
+    public synchronized void loadLikeIndexes() {
+        reloadJournal = new ConcurrentLinkedQueue<>();
+        LikeIndexes loaded = new LikeIndexes();
+        int[] likes = new int[1];
+        try {
+            // Сначала фильмы, потом лайки: лайки фильма, удаленного между запросами, в индекс не попадут
+            jdbcTemplate.query("SELECT id FROM films", (RowCallbackHandler) rs -> loaded.addFilm(rs.getInt("id")));
+            jdbcTemplate.query("SELECT film_id, user_id, created_at FROM film_likes", (RowCallbackHandler) rs -> {
+                loaded.like(rs.getInt("film_id"), rs.getInt("user_id"), rs.getTimestamp("created_at").toInstant());
+                likes[0]++;
+            });
+        } catch (RuntimeException e) {
+            reloadJournal = null;
+            throw e;
+        }
+        // Загрузка сама по себе не изменение: отмечаем только фильмы, лайки которых разошлись с текущим графом
+        loaded.graph.drainChangedFilms();
+        loaded.graph.markDifferencesFrom(likeIndexes.graph);
+
+        int replayed;
+        indexSwapLock.writeLock().lock();
+        try {
+            replayed = reloadJournal.size();
+            reloadJournal.forEach(change -> change.accept(loaded));
+            loaded.graph.inheritChangedFilms(likeIndexes.graph);
+            likeIndexes = loaded;
+            reloadJournal = null;
+        } finally {
+            indexSwapLock.writeLock().unlock();
+        }
+        log.info("Storage: Индексы лайков загружены: фильмов {}, лайков {}, изменений за время загрузки {}",
+                loaded.popularity.size(), likes[0], replayed);
+    }
+
+    /**
+     * Убирает из индексов лайки удаленного пользователя. Строки film_likes удаляются каскадно
+     * вместе с пользователем, а счетчики фильмов уменьшает хранилище пользователей.
+     */
+    public void removeUserLikes(int userId) {
+        applyToIndexes(indexes -> indexes.removeUser(userId));
+    }
 
     @Override
     public Film create(Film film) {
         log.info("Создание фильма: {}", film.getName());
 
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("films")
-                .usingGeneratedKeyColumns("id");
-
-        Map<String, Object> parameters = new HashMap<>();
-        parameters.put("name", film.getName());
-        parameters.put("description", film.getDescription());
-        parameters.put("release_date", film.getReleaseDate());
-        parameters.put("duration", film.getDuration());
-        parameters.put("mpa_rating_id", film.getMpa() != null ? film.getMpa().getId() : null);
-
-        Number id = simpleJdbcInsert.executeAndReturnKey(parameters);
-        film.setId(id.intValue());
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(INSERT_FILM_SQL, new String[]{"id"});
+            setFilmParameters(ps, film);
+            return ps;
+        }, keyHolder);
+        film.setId(Objects.requireNonNull(keyHolder.getKey()).intValue());
 
         saveGenres(film);
+        int filmId = film.getId();
+        applyToIndexes(indexes -> indexes.addFilm(filmId));
 
         log.info("Фильм создан с ID: {}", film.getId());
         return findById(film.getId()).orElse(film);
     }
 
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        if (films.isEmpty()) {
+            return new ArrayList<>();
+        }
+        log.info("Storage: Пакетное создание {} фильмов", films.size());
+
+        transactionTemplate.executeWithoutResult(status -> {
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            jdbcTemplate.batchUpdate(
+                    connection -> connection.prepareStatement(INSERT_FILM_SQL, new String[]{"id"}),
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            setFilmParameters(ps, films.get(i));
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return films.size();
+                        }
+                    },
+                    keyHolder);
+
+            List<Map<String, Object>> keys = keyHolder.getKeyList();
+            List<Object[]> genreArgs = new ArrayList<>();
+            for (int i = 0; i < films.size(); i++) {
+                Film film = films.get(i);
+                film.setId(((Number) keys.get(i).values().iterator().next()).intValue());
+                film.setGenres(sortedGenres(film.getGenres()));
+                for (Genre genre : film.getGenres()) {
+                    genreArgs.add(new Object[]{film.getId(), genre.getId()});
+                }
+            }
+            jdbcTemplate.batchUpdate(INSERT_FILM_GENRE_SQL, genreArgs);
+        });
+
+        // Фильмы только что созданы, поэтому не перечитываем их: лайков у них нет
+        for (Film film : films) {
+            film.setRate(0);
+            int filmId = film.getId();
+            applyToIndexes(indexes -> indexes.addFilm(filmId));
+        }
+        log.info("Storage: Создано {} фильмов", films.size());
+        return films;
+    }
+
     @Override
     public Film update(Film film) {
         log.info("Обновление фильма с ID: {}", film.getId());
 
         String sql = "UPDATE films SET name = ?, description = ?, release_date = ?, duration = ?, " +
                 "mpa_rating_id = ? WHERE id = ?";
-        int rowsUpdated = jdbcTemplate.update(sql,
-                film.getName(),
-                film.getDescription(),
-                film.getReleaseDate(),
-                film.getDuration(),
-                film.getMpa() != null ? film.getMpa().getId() : null,
-                film.getId());
-
-        if (rowsUpdated == 0) {
-            throw new NotFoundException("Фильм с ID " + film.getId() + " не найден");
-        }
+        transactionTemplate.executeWithoutResult(status -> {
+            int rowsUpdated = jdbcTemplate.update(sql,
+                    film.getName(),
+                    film.getDescription(),
+                    film.getReleaseDate(),
+                    film.getDuration(),
+                    film.getMpa() != null ? film.getMpa().getId() : null,
+                    film.getId());
+
+            if (rowsUpdated == 0) {
+                throw new NotFoundException("Фильм с ID " + film.getId() + " не найден");
+            }
 
-        deleteGenres(film.getId());
-        saveGenres(film);
+            deleteGenres(film.getId());
+            saveGenres(film);
+        });
 
         return findById(film.getId()).orElse(film);
     }
@@ -76,32 +214,20 @@ public class FilmDbStorage implements FilmStorage {
     public List<Film> findAll() {
         log.info("Storage: Получение всех фильмов");
 
-        // Используем подзапрос для подсчета лайков
-        String sql = "SELECT f.*, m.id as mpa_id, m.name as mpa_name, m.description as mpa_description, " +
-                "(SELECT COUNT(*) FROM film_likes fl WHERE fl.film_id = f.id) as likes_count " +
-                "FROM films f LEFT JOIN mpa_ratings m ON f.mpa_rating_id = m.id " +
-                "ORDER BY f.id";
-
-        log.info("Storage: SQL запрос для findAll: {}", sql);
+        String sql = SELECT_FILMS_SQL + "ORDER BY f.id";
 
-        List<Film> films = jdbcTemplate.query(sql, new FilmRowMapper());
-
-        if (films.isEmpty()) {
-            log.warn("Storage: В базе данных НЕТ фильмов!");
-        } else {
-            log.info("Storage: Найдено {} фильмов", films.size());
-            for (Film film : films) {
-                log.info("Storage:   Фильм: ID={}, название='{}', лайков={}",
-                        film.getId(), film.getName(),
-                        film.getRate() != null ? film.getRate() : 0);
-            }
-        }
+        List<Film> films = jdbcTemplate.query(sql, filmRowMapper);
+        log.info("Storage: Найдено {} фильмов", films.size());
+        return films;
+    }
 
-        // Загружаем только жанры, лайки уже загружены в FilmRowMapper
-        loadAllGenres(films);
+    @Override
+    public List<Film> findPage(int afterId, int limit) {
+        log.debug("Storage: Получение страницы фильмов: afterId={}, limit={}", afterId, limit);
 
-        log.info("Storage: Загружены жанры для {} фильмов", films.size());
-        return films;
+        // Keyset-пагинация по первичному ключу: стоимость не зависит от размера каталога
+        String sql = SELECT_FILMS_SQL + "WHERE f.id > ? ORDER BY f.id LIMIT ?";
+        return jdbcTemplate.query(sql, filmRowMapper, afterId, limit);
     }
 
     @Override
@@ -111,24 +237,27 @@ public class FilmDbStorage implements FilmStorage {
         return count != null ? count : 0;
     }
 
+    @Override
+    public long getTotalLikesCount() {
+        String sql = "SELECT COUNT(*) FROM film_likes";
+        Long count = jdbcTemplate.queryForObject(sql, Long.class);
+        return count != null ? count : 0;
+    }
+
     @Override
     public Optional<Film> findById(int id) {
         log.info("Поиск фильма по ID: {}", id);
 
-        String sql = "SELECT f.*, m.id as mpa_id, m.name as mpa_name, m.description as mpa_description, " +
-                "(SELECT COUNT(*) FROM film_likes fl WHERE fl.film_id = f.id) as likes_count " +
-                "FROM films f LEFT JOIN mpa_ratings m ON f.mpa_rating_id = m.id WHERE f.id = ?";
+        // Фильм, рейтинг MPA, счетчик лайков и жанры читаются одним запросом
+        String sql = SELECT_FILMS_SQL + "WHERE f.id = ?";
 
-        List<Film> films = jdbcTemplate.query(sql, new FilmRowMapper(), id);
+        List<Film> films = jdbcTemplate.query(sql, filmRowMapper, id);
         if (films.isEmpty()) {
             log.info("Фильм с ID {} не найден", id);
             return Optional.empty();
         }
 
         Film film = films.get(0);
-        // Загружаем только жанры, лайки уже загружены в FilmRowMapper
-        loadGenres(film);
-
         log.info("Фильм с ID {} найден: {}", id, film.getName());
         return Optional.of(film);
     }
@@ -139,6 +268,7 @@ public class FilmDbStorage implements FilmStorage {
 
         String sql = "DELETE FROM films WHERE id = ?";
         jdbcTemplate.update(sql, id);
+        applyToIndexes(indexes -> indexes.removeFilm(id));
     }
 
     @Override
@@ -148,140 +278,295 @@ public class FilmDbStorage implements FilmStorage {
         return count != null && count > 0;
     }
 
+    /**
+     * Включает групповую запись лайков: операции копятся и фиксируются пачками в одной транзакции.
+     */
+    public void enableLikeBatching(int batchSize, Duration maxWait, Duration submitTimeout,
+                                   MeterRegistry meterRegistry) {
+        likeWriteBatcher = new LikeWriteBatcher(batchSize, maxWait, submitTimeout, this::writeLikeBatch,
+                meterRegistry);
+        log.info("Storage: Включена групповая запись лайков: batchSize={}, maxWait={}", batchSize, maxWait);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (likeWriteBatcher != null) {
+            likeWriteBatcher.close();
+        }
+    }
+
     @Override
-    public void addLike(int filmId, int userId) {
+    public boolean addLike(int filmId, int userId) {
         log.info("Добавление лайка: filmId={}, userId={}", filmId, userId);
 
-        // Проверяем существование фильма
-        if (!existsById(filmId)) {
-            throw new NotFoundException("Фильм с ID " + filmId + " не найден");
+        boolean added = likeWriteBatcher != null
+                ? likeWriteBatcher.submit(filmId, userId, true)
+                : writeLike(filmId, userId);
+        log.info("Лайк {}: filmId={}, userId={}", added ? "добавлен" : "уже существует", filmId, userId);
+        return added;
+    }
+
+    @Override
+    public boolean removeLike(int filmId, int userId) {
+        log.info("Удаление лайка: filmId={}, userId={}", filmId, userId);
+
+        boolean removed = likeWriteBatcher != null
+                ? likeWriteBatcher.submit(filmId, userId, false)
+                : deleteLike(filmId, userId);
+        if (removed) {
+            log.info("Лайк удален: filmId={}, userId={}", filmId, userId);
+            return true;
         }
 
-        // Проверяем существование пользователя
-        String checkUserSql = "SELECT COUNT(*) FROM users WHERE id = ?";
-        Integer userCount = jdbcTemplate.queryForObject(checkUserSql, Integer.class, userId);
-        if (userCount == null || userCount == 0) {
-            throw new NotFoundException("Пользователь с ID " + userId + " не найден");
+        checkLikeReferences(filmId, userId);
+        return false;
+    }
+
+    private boolean writeLike(int filmId, int userId) {
+        Instant likedAt = Instant.now();
+        Integer inserted;
+        try {
+            // Лайк и счетчик лайков фильма меняются в одной транзакции
+            inserted = transactionTemplate.execute(status -> {
+                int rows = jdbcTemplate.update(INSERT_LIKE_SQL, filmId, userId, Timestamp.from(likedAt),
+                        filmId, userId);
+                if (rows > 0) {
+                    jdbcTemplate.update(INCREMENT_LIKES_SQL, rows, filmId);
+                }
+                return rows;
+            });
+        } catch (DuplicateKeyException e) {
+            // Тот же лайк параллельно вставил другой запрос
+            inserted = 0;
+        } catch (DataIntegrityViolationException e) {
+            // Нарушен внешний ключ: проверяем фильм и пользователя явно, не разбирая текст ошибки
+            checkLikeReferences(filmId, userId);
+            throw e;
         }
 
-        String checkSql = "SELECT COUNT(*) FROM film_likes WHERE film_id = ? AND user_id = ?";
-        Integer count = jdbcTemplate.queryForObject(checkSql, Integer.class, filmId, userId);
-
-        if (count == null || count == 0) {
-            String insertSql = "INSERT INTO film_likes (film_id, user_id) VALUES (?, ?)";
-            try {
-                jdbcTemplate.update(insertSql, filmId, userId);
-                log.info("Лайк добавлен: filmId={}, userId={}", filmId, userId);
-            } catch (DataIntegrityViolationException e) {
-                log.error("Ошибка при добавлении лайка: {}", e.getMessage());
-                throw new DataIntegrityViolationException("Не удалось добавить лайк");
-            }
-        } else {
-            log.info("Лайк уже существует: filmId={}, userId={}", filmId, userId);
+        if (inserted == null || inserted == 0) {
+            return false;
         }
+        applyToIndexes(indexes -> indexes.like(filmId, userId, likedAt));
+        return true;
     }
 
-    @Override
-    public void removeLike(int filmId, int userId) {
-        log.info("Удаление лайка: filmId={}, userId={}", filmId, userId);
-
-        String sql = "DELETE FROM film_likes WHERE film_id = ? AND user_id = ?";
-        int rowsDeleted = jdbcTemplate.update(sql, filmId, userId);
+    private boolean deleteLike(int filmId, int userId) {
+        Integer rowsDeleted = transactionTemplate.execute(status -> {
+            int deleted = jdbcTemplate.update(DELETE_LIKE_SQL, filmId, userId);
+            if (deleted > 0) {
+                jdbcTemplate.update(INCREMENT_LIKES_SQL, -deleted, filmId);
+            }
+            return deleted;
+        });
 
-        if (rowsDeleted > 0) {
-            log.info("Лайк удален: filmId={}, userId={}", filmId, userId);
+        if (rowsDeleted == null || rowsDeleted == 0) {
+            return false;
         }
+        applyToIndexes(indexes -> indexes.unlike(filmId, userId));
+        return true;
     }
 
-    @Override
-    public List<Film> getPopularFilms(int count) {
-        log.info("Storage: Получение {} популярных фильмов", count);
-
-        // Упрощенный запрос
-        String sql = "SELECT f.*, m.id as mpa_id, m.name as mpa_name, " +
-                "m.description as mpa_description, " +
-                "COALESCE(fl.likes_count, 0) as likes_count " +
-                "FROM films f " +
-                "LEFT JOIN mpa_ratings m ON f.mpa_rating_id = m.id " +
-                "LEFT JOIN (SELECT film_id, COUNT(*) as likes_count " +
-                "           FROM film_likes GROUP BY film_id) fl " +
-                "ON f.id = fl.film_id " +
-                "ORDER BY likes_count DESC, f.id DESC " +
-                "LIMIT ?";
-
-        log.info("Storage: SQL запрос для популярных фильмов: {}", sql);
-
-        List<Film> popularFilms = jdbcTemplate.query(sql, new FilmRowMapper(), count);
-        log.info("Storage: Получено {} фильмов из БД", popularFilms.size());
-
-        if (!popularFilms.isEmpty()) {
-            // Загружаем только жанры, лайки уже загружены в FilmRowMapper
-            loadAllGenres(popularFilms);
-
-            // Выводим информацию для отладки
-            for (int i = 0; i < popularFilms.size(); i++) {
-                Film film = popularFilms.get(i);
-                log.info("Storage: Популярный фильм {}: ID={}, название='{}', лайков={}",
-                        i + 1, film.getId(), film.getName(),
-                        film.getRate());
+    private void writeLikeBatch(List<LikeWriteBatcher.LikeOperation> batch) {
+        Timestamp likedAt = Timestamp.from(Instant.now());
+        boolean[] changed = new boolean[batch.size()];
+        Map<Integer, Integer> deltas = new TreeMap<>();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                // Идем сериями однотипных операций, чтобы like и unlike одной пары применились по порядку
+                int from = 0;
+                while (from < batch.size()) {
+                    boolean add = batch.get(from).add();
+                    int to = from;
+                    while (to < batch.size() && batch.get(to).add() == add) {
+                        to++;
+                    }
+                    List<Object[]> args = new ArrayList<>();
+                    for (LikeWriteBatcher.LikeOperation operation : batch.subList(from, to)) {
+                        args.add(add
+                                ? new Object[]{operation.filmId(), operation.userId(), likedAt,
+                                        operation.filmId(), operation.userId()}
+                                : new Object[]{operation.filmId(), operation.userId()});
+                    }
+                    int[] rows = jdbcTemplate.batchUpdate(add ? INSERT_LIKE_SQL : DELETE_LIKE_SQL, args);
+                    for (int i = 0; i < rows.length; i++) {
+                        LikeWriteBatcher.LikeOperation operation = batch.get(from + i);
+                        changed[from + i] = rows[i] > 0;
+                        if (changed[from + i]) {
+                            deltas.merge(operation.filmId(), add ? 1 : -1, Integer::sum);
+                        }
+                    }
+                    from = to;
+                }
+
+                // Счетчики обновляем в порядке ID фильмов, чтобы параллельные транзакции не блокировали друг друга
+                List<Object[]> counterArgs = new ArrayList<>();
+                deltas.forEach((filmId, delta) -> {
+                    if (delta != 0) {
+                        counterArgs.add(new Object[]{delta, filmId});
+                    }
+                });
+                jdbcTemplate.batchUpdate(INCREMENT_LIKES_SQL, counterArgs);
+            });
+        } catch (DataAccessException e) {
+            // Какая-то операция пачки нарушила внешний ключ: повторяем операции по одной,
+            // чтобы ошибку получил только ее автор
+            log.warn("Storage: Пачка из {} лайков отклонена, запись по одному: {}", batch.size(), e.getMessage());
+            for (LikeWriteBatcher.LikeOperation operation : batch) {
+                try {
+                    operation.result().complete(operation.add()
+                            ? writeLike(operation.filmId(), operation.userId())
+                            : deleteLike(operation.filmId(), operation.userId()));
+                } catch (RuntimeException operationError) {
+                    operation.result().completeExceptionally(operationError);
+                }
+            }
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            LikeWriteBatcher.LikeOperation operation = batch.get(i);
+            int filmId = operation.filmId();
+            int userId = operation.userId();
+            if (changed[i] && operation.add()) {
+                applyToIndexes(indexes -> indexes.like(filmId, userId, likedAt.toInstant()));
+            } else if (changed[i]) {
+                applyToIndexes(indexes -> indexes.unlike(filmId, userId));
             }
+            operation.result().complete(changed[i]);
         }
+    }
+
+    private void checkLikeReferences(int filmId, int userId) {
+        // Одним запросом выясняем, существуют ли фильм и пользователь
+        String checkSql = "SELECT (SELECT COUNT(*) FROM films WHERE id = ?) AS films, " +
+                "(SELECT COUNT(*) FROM users WHERE id = ?) AS users";
+        jdbcTemplate.query(checkSql, rs -> {
+            if (rs.getInt("films") == 0) {
+                throw new NotFoundException("Фильм с ID " + filmId + " не найден");
+            }
+            if (rs.getInt("users") == 0) {
+                throw new NotFoundException("Пользователь с ID " + userId + " не найден");
+            }
+        }, filmId, userId);
+    }
+
+    @Override
+    public List<Film> getPopularFilms(int count, PopularFilmsFilter filter) {
+        log.info("Storage: Получение {} популярных фильмов, фильтр {}", count, filter);
 
+        // Порядок берем из индекса популярности или из запроса по индексам БД,
+        // сами фильмы читаем по первичному ключу
+        List<Film> popularFilms = findByIds(getPopularFilmIds(count, filter));
+        log.info("Storage: Получено {} популярных фильмов", popularFilms.size());
         return popularFilms;
     }
 
-    private void loadAllGenres(List<Film> films) {
-        if (films.isEmpty()) {
-            log.info("Storage: Нет фильмов для загрузки жанров");
-            return;
+    @Override
+    public List<Integer> getPopularFilmIds(int count, PopularFilmsFilter filter) {
+        if (filter.isEmpty()) {
+            return Arrays.stream(likeIndexes.popularity.top(count)).boxed().collect(Collectors.toList());
         }
 
-        List<Integer> filmIds = films.stream()
-                .map(Film::getId)
-                .collect(Collectors.toList());
+        // С фильтром по жанру начинаем с film_genres(genre_id, film_id), иначе — с films
+        StringBuilder sql = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+        if (filter.genreId() != null) {
+            sql.append("SELECT f.id FROM film_genres fg JOIN films f ON f.id = fg.film_id ");
+            conditions.add("fg.genre_id = ?");
+            params.add(filter.genreId());
+        } else {
+            sql.append("SELECT f.id FROM films f ");
+        }
+        if (filter.mpaId() != null) {
+            conditions.add("f.mpa_rating_id = ?");
+            params.add(filter.mpaId());
+        }
+        if (filter.year() != null) {
+            // Диапазон вместо YEAR(release_date), чтобы работал индекс по release_date
+            conditions.add("f.release_date >= ? AND f.release_date < ?");
+            params.add(LocalDate.of(filter.year(), 1, 1));
+            params.add(LocalDate.of(filter.year() + 1, 1, 1));
+        }
+        sql.append("WHERE ").append(String.join(" AND ", conditions))
+                .append(" ORDER BY f.likes_count DESC, f.id DESC LIMIT ?");
+        params.add(count);
 
-        String placeholders = filmIds.stream()
-                .map(id -> "?")
-                .collect(Collectors.joining(","));
+        return jdbcTemplate.queryForList(sql.toString(), Integer.class, params.toArray());
+    }
 
-        String sql = String.format(
-                "SELECT fg.film_id, g.id, g.name " +
-                        "FROM film_genres fg " +
-                        "JOIN genres g ON fg.genre_id = g.id " +
-                        "WHERE fg.film_id IN (%s) " +
-                        "ORDER BY fg.film_id, g.id",
-                placeholders
-        );
+    @Override
+    public List<Film> getTrendingFilms(TrendingWindow window, int count) {
+        log.info("Storage: Получение {} трендовых фильмов за {}", count, window.getValue());
+        return findByIds(getTrendingFilmIds(window, count));
+    }
 
-        log.debug("Storage: Загрузка жанров для фильмов: {}", filmIds);
+    @Override
+    public List<Integer> getTrendingFilmIds(TrendingWindow window, int count) {
+        return Arrays.stream(likeIndexes.trending.top(window, count)).boxed().collect(Collectors.toList());
+    }
 
-        List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql, filmIds.toArray());
+    @Override
+    public LikeGraph getLikeGraph() {
+        return likeIndexes.graph;
+    }
 
-        Map<Integer, Set<Genre>> genresByFilmId = new HashMap<>();
-        for (Map<String, Object> row : rows) {
-            Integer filmId = (Integer) row.get("film_id");
+    @Override
+    public long getLikesCount(int filmId) {
+        return likeIndexes.popularity.getLikes(filmId);
+    }
 
-            Genre genre = new Genre();
-            genre.setId((Integer) row.get("id"));
-            genre.setName((String) row.get("name"));
+    @Override
+    public long[] getLikesCounts(int[] filmIds) {
+        // Все счетчики читаем из одного набора индексов, даже если параллельно идет перезагрузка
+        PopularityIndex popularity = likeIndexes.popularity;
+        long[] likes = new long[filmIds.length];
+        for (int i = 0; i < filmIds.length; i++) {
+            likes[i] = popularity.getLikes(filmIds[i]);
+        }
+        return likes;
+    }
 
-            genresByFilmId.computeIfAbsent(filmId, k -> new LinkedHashSet<>()).add(genre);
+    @Override
+    public List<Film> findByIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
         }
 
-        for (Film film : films) {
-            Set<Genre> genres = genresByFilmId.getOrDefault(film.getId(), new LinkedHashSet<>());
-            film.setGenres(genres);
+        List<Film> films = ChunkedIdQuery.query(jdbcTemplate, SELECT_FILMS_SQL + "WHERE f.id IN (%s)",
+                filmRowMapper, ids);
+        Map<Integer, Film> filmsById = films.stream()
+                .collect(Collectors.toMap(Film::getId, film -> film));
+
+        // Сохраняем порядок запрошенных ID, отсутствующие фильмы пропускаем
+        return ids.stream()
+                .map(filmsById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public int reconcileLikesCount() {
+        // Лайки считаются одним проходом по film_likes с группировкой, а не подзапросом на каждый фильм
+        String sql = "MERGE INTO films f USING (" +
+                "SELECT f2.id, COALESCE(c.likes, 0) AS likes FROM films f2 " +
+                "LEFT JOIN (SELECT film_id, COUNT(*) AS likes FROM film_likes GROUP BY film_id) c " +
+                "ON c.film_id = f2.id) s ON f.id = s.id " +
+                "WHEN MATCHED AND f.likes_count <> s.likes THEN UPDATE SET likes_count = s.likes";
+        int repaired = jdbcTemplate.update(sql);
+        if (repaired > 0) {
+            // Счетчики разошлись с таблицей — значит, могли разойтись и индексы; без расхождений
+            // полную перезагрузку не запускаем
+            log.warn("Storage: Исправлены счетчики лайков у {} фильмов", repaired);
+            loadLikeIndexes();
         }
+        return repaired;
     }
 
     private void saveGenres(Film film) {
         if (film.getGenres() != null && !film.getGenres().isEmpty()) {
-            Set<Genre> uniqueGenres = film.getGenres().stream()
-                    .collect(Collectors.toCollection(
-                            () -> new TreeSet<>(Comparator.comparingInt(Genre::getId))
-                    ));
-
-            String sql = "INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)";
+            Set<Genre> uniqueGenres = sortedGenres(film.getGenres());
 
             // Создаем список аргументов для batchUpdate
             List<Object[]> batchArgs = new ArrayList<>();
@@ -289,41 +574,97 @@ public class FilmDbStorage implements FilmStorage {
                 batchArgs.add(new Object[]{film.getId(), genre.getId()});
             }
 
-            jdbcTemplate.batchUpdate(sql, batchArgs);
+            jdbcTemplate.batchUpdate(INSERT_FILM_GENRE_SQL, batchArgs);
 
             log.info("Сохранены жанры для фильма ID {}: {}", film.getId(),
                     uniqueGenres.stream().map(Genre::getName).collect(Collectors.joining(", ")));
         }
     }
 
+    // Жанры без повторов, упорядоченные по ID, как их возвращает findById
+    private static Set<Genre> sortedGenres(Set<Genre> genres) {
+        if (genres == null) {
+            return new LinkedHashSet<>();
+        }
+        Map<Integer, Genre> genresById = new TreeMap<>();
+        genres.forEach(genre -> genresById.putIfAbsent(genre.getId(), genre));
+        return new LinkedHashSet<>(genresById.values());
+    }
+
+    private static void setFilmParameters(PreparedStatement ps, Film film) throws SQLException {
+        ps.setString(1, film.getName());
+        ps.setString(2, film.getDescription());
+        ps.setObject(3, film.getReleaseDate() != null ? java.sql.Date.valueOf(film.getReleaseDate()) : null,
+                Types.DATE);
+        ps.setObject(4, film.getDuration(), Types.INTEGER);
+        ps.setObject(5, film.getMpa() != null ? film.getMpa().getId() : null, Types.INTEGER);
+    }
+
     private void deleteGenres(int filmId) {
         String sql = "DELETE FROM film_genres WHERE film_id = ?";
         jdbcTemplate.update(sql, filmId);
         log.info("Удалены жанры для фильма ID: {}", filmId);
     }
 
-    private void loadGenres(Film film) {
-        String sql = "SELECT g.id, g.name FROM genres g " +
-                "JOIN film_genres fg ON g.id = fg.genre_id " +
-                "WHERE fg.film_id = ? ORDER BY g.id";
-        List<Genre> genres = jdbcTemplate.query(sql,
-                (rs, rowNum) -> {
-                    Genre genre = new Genre();
-                    genre.setId(rs.getInt("id"));
-                    genre.setName(rs.getString("name"));
-                    return genre;
-                },
-                film.getId());
+    private void applyToIndexes(Consumer<LikeIndexes> change) {
+        indexSwapLock.readLock().lock();
+        try {
+            Queue<Consumer<LikeIndexes>> journal = reloadJournal;
+            if (journal != null) {
+                journal.add(change);
+            }
+            change.accept(likeIndexes);
+        } finally {
+            indexSwapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Индексы, построенные по таблице лайков: популярность, тренды и граф лайков.
+     * Счетчики меняются только вместе с графом, поэтому повторное применение изменения,
+     * которое индексы уже видели, ничего не меняет.
+     */
+    private static final class LikeIndexes {
+        private final PopularityIndex popularity = new PopularityIndex();
+        private final TrendingIndex trending = new TrendingIndex(Clock.systemUTC());
+        private final LikeGraph graph = new LikeGraph();
+
+        void addFilm(int filmId) {
+            popularity.putIfAbsent(filmId, 0);
+        }
+
+        void removeFilm(int filmId) {
+            popularity.remove(filmId);
+            trending.removeFilm(filmId);
+            graph.removeFilm(filmId);
+        }
+
+        void like(int filmId, int userId, Instant likedAt) {
+            if (graph.add(filmId, userId)) {
+                popularity.increment(filmId, 1);
+                trending.recordLike(filmId, userId, likedAt);
+            }
+        }
 
-        Set<Genre> sortedGenres = new LinkedHashSet<>(genres);
-        film.setGenres(sortedGenres);
+        void unlike(int filmId, int userId) {
+            if (graph.remove(filmId, userId)) {
+                popularity.increment(filmId, -1);
+                trending.recordUnlike(filmId, userId);
+            }
+        }
 
-        log.info("Загружены {} жанров для фильма ID {}", genres.size(), film.getId());
+        void removeUser(int userId) {
+            graph.getFilms(userId).forEach((int filmId) -> unlike(filmId, userId));
+        }
     }
 
-    private static class FilmRowMapper implements RowMapper<Film> {
+    private class FilmRowMapper implements RowMapper<Film> {
+        private static final String GENRE_SEPARATOR = ",";
+
         @Override
         public Film mapRow(ResultSet rs, int rowNum) throws SQLException {
+            GenreMpaRegistry registry = genreMpaStorage.getRegistry();
+
             Film film = new Film();
             film.setId(rs.getInt("id"));
             film.setName(rs.getString("name"));
@@ -344,20 +685,42 @@ public class FilmDbStorage implements FilmStorage {
             }
             film.setRate(likesCount);
 
-            // Устанавливаем MPA рейтинг
+            // Устанавливаем MPA рейтинг из справочника
             int mpaId = rs.getInt("mpa_rating_id");
             if (!rs.wasNull() && mpaId > 0) {
-                MpaRating mpa = new MpaRating();
-                mpa.setId(mpaId);
-                mpa.setName(rs.getString("mpa_name"));
-                mpa.setDescription(rs.getString("mpa_description"));
+                MpaRating mpa = registry.findMpaRating(mpaId);
+                if (mpa == null) {
+                    // Справочник устарел или в таблице битая ссылка: не теряем рейтинг, а сообщаем о нем
+                    log.warn("FilmRowMapper: Рейтинг MPA ID={} фильма ID={} не найден в справочнике",
+                            mpaId, film.getId());
+                    mpa = new MpaRating(mpaId, null, null);
+                }
                 film.setMpa(mpa);
             }
 
+            film.setGenres(parseGenres(film.getId(), rs.getString("genre_ids"), registry));
+
             log.debug("FilmRowMapper: Фильм ID={}, name='{}', likes={}",
                     film.getId(), film.getName(), likesCount);
 
             return film;
         }
+
+        private Set<Genre> parseGenres(int filmId, String genreIds, GenreMpaRegistry registry) {
+            Set<Genre> genres = new LinkedHashSet<>();
+            if (genreIds == null || genreIds.isEmpty()) {
+                return genres;
+            }
+            for (String value : genreIds.split(GENRE_SEPARATOR)) {
+                int genreId = Integer.parseInt(value);
+                Genre genre = registry.findGenre(genreId);
+                if (genre == null) {
+                    log.warn("FilmRowMapper: Жанр ID={} фильма ID={} не найден в справочнике", genreId, filmId);
+                    genre = new Genre(genreId, null);
+                }
+                genres.add(genre);
+            }
+            return genres;
+        }
     }
-}
\ No newline at end of file
+}
@@ -2,27 +2,106 @@ package ru.yandex.practicum.filmorate.storage.film;
 
 import ru.yandex.practicum.filmorate.model.Film;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface FilmStorage {
     Film create(Film film);
 
+    /**
+     * Создает все фильмы одной операцией. Фильмы должны быть уже проверены,
+     * жанры и рейтинг MPA — заполнены полностью.
+     */
+    List<Film> createAll(List<Film> films);
+
     Film update(Film film);
 
     List<Film> findAll();
 
+    /**
+     * Возвращает не более limit фильмов с ID больше afterId в порядке возрастания ID.
+     */
+    List<Film> findPage(int afterId, int limit);
+
     Optional<Film> findById(int id);
 
+    /**
+     * Возвращает фильмы с указанными ID в порядке перечисления, несуществующие ID пропускаются.
+     */
+    List<Film> findByIds(Collection<Integer> ids);
+
     void delete(int id);
 
     boolean existsById(int id);
 
-    void addLike(int filmId, int userId);
+    /**
+     * Идемпотентно добавляет лайк.
+     *
+     * @return true, если лайк был добавлен, false — если он уже существовал
+     * @throws ru.yandex.practicum.filmorate.exception.NotFoundException если нет фильма или пользователя
+     */
+    boolean addLike(int filmId, int userId);
+
+    /**
+     * Идемпотентно удаляет лайк.
+     *
+     * @return true, если лайк был удален, false — если его не было
+     * @throws ru.yandex.practicum.filmorate.exception.NotFoundException если нет фильма или пользователя
+     */
+    boolean removeLike(int filmId, int userId);
+
+    default List<Film> getPopularFilms(int count) {
+        return getPopularFilms(count, PopularFilmsFilter.NONE);
+    }
+
+    /**
+     * Возвращает не более count самых популярных фильмов, подходящих под фильтр.
+     */
+    List<Film> getPopularFilms(int count, PopularFilmsFilter filter);
 
-    void removeLike(int filmId, int userId);
+    /**
+     * Возвращает ID не более чем count самых популярных фильмов, подходящих под фильтр, в порядке выдачи.
+     */
+    List<Integer> getPopularFilmIds(int count, PopularFilmsFilter filter);
 
-    List<Film> getPopularFilms(int count);
+    /**
+     * Возвращает не более count фильмов, набравших больше всего лайков за окно.
+     */
+    List<Film> getTrendingFilms(TrendingWindow window, int count);
+
+    List<Integer> getTrendingFilmIds(TrendingWindow window, int count);
+
+    /**
+     * Возвращает текущее количество лайков фильма (0 для несуществующего фильма).
+     */
+    long getLikesCount(int filmId);
+
+    /**
+     * Возвращает количество лайков для каждого фильма из filmIds (в том же порядке) одним вызовом.
+     */
+    default long[] getLikesCounts(int[] filmIds) {
+        long[] likes = new long[filmIds.length];
+        for (int i = 0; i < filmIds.length; i++) {
+            likes[i] = getLikesCount(filmIds[i]);
+        }
+        return likes;
+    }
 
     int getTotalFilmsCount();
+
+    long getTotalLikesCount();
+
+    /**
+     * Возвращает граф лайков, который хранилище держит актуальным при записи лайков.
+     * Снаружи пакета хранилищ граф можно только читать: методы изменения в нем пакетные.
+     */
+    LikeGraph getLikeGraph();
+
+    /**
+     * Сверяет сохраненные счетчики лайков с фактическими лайками и исправляет расхождения.
+     *
+     * @return количество исправленных фильмов
+     */
+    int reconcileLikesCount();
 }
\ No newline at end of file
@@ -1,7 +1,8 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
-import org.springframework.dao.EmptyResultDataAccessException;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Genre;
@@ -9,52 +10,65 @@ import ru.yandex.practicum.filmorate.model.MpaRating;
 
 import java.util.List;
 
+/**
+ * Справочники жанров и рейтингов MPA. Читаются из БД при старте и по {@link #refresh()},
+ * все остальные обращения обслуживаются из памяти.
+ */
+@Slf4j
 @RequiredArgsConstructor
 public class GenreMpaDbStorage implements GenreMpaStorage {
     private final JdbcTemplate jdbcTemplate;
+    private volatile GenreMpaRegistry registry;
 
+    @PostConstruct
     @Override
-    public List<Genre> getAllGenres() {
-        String sql = "SELECT * FROM genres ORDER BY id";
-        return jdbcTemplate.query(sql, (rs, rowNum) ->
+    public void refresh() {
+        List<Genre> genres = jdbcTemplate.query("SELECT * FROM genres ORDER BY id", (rs, rowNum) ->
                 new Genre(rs.getInt("id"), rs.getString("name"))
         );
+        List<MpaRating> mpaRatings = jdbcTemplate.query("SELECT * FROM mpa_ratings ORDER BY id", (rs, rowNum) ->
+                new MpaRating(rs.getInt("id"), rs.getString("name"), rs.getString("description"))
+        );
+        registry = GenreMpaRegistry.of(genres, mpaRatings);
+        log.info("Загружены справочники: жанров {}, рейтингов MPA {}", genres.size(), mpaRatings.size());
+    }
+
+    @Override
+    public GenreMpaRegistry getRegistry() {
+        GenreMpaRegistry current = registry;
+        if (current == null) {
+            // Хранилище создано вне контейнера и еще не загружено
+            refresh();
+            current = registry;
+        }
+        return current;
+    }
+
+    @Override
+    public List<Genre> getAllGenres() {
+        return getRegistry().getGenres();
     }
 
     @Override
     public Genre getGenreById(int id) {
-        String sql = "SELECT * FROM genres WHERE id = ?";
-        List<Genre> genres = jdbcTemplate.query(sql, (rs, rowNum) -> {
-            Genre genre = new Genre();
-            genre.setId(rs.getInt("id"));
-            genre.setName(rs.getString("name"));
-            return genre;
-        }, id);
-
-        if (genres.isEmpty()) {
+        Genre genre = getRegistry().findGenre(id);
+        if (genre == null) {
             throw new NotFoundException("Жанр с ID " + id + " не найден");
         }
-        return genres.get(0);
+        return genre;
     }
 
     @Override
     public List<MpaRating> getAllMpaRatings() {
-        String sql = "SELECT * FROM mpa_ratings ORDER BY id";
-        return jdbcTemplate.query(sql, (rs, rowNum) ->
-                new MpaRating(rs.getInt("id"), rs.getString("name"), rs.getString("description"))
-        );
+        return getRegistry().getMpaRatings();
     }
 
     @Override
     public MpaRating getMpaRatingById(int id) {
-        String sql = "SELECT * FROM mpa_ratings WHERE id = ?";
-        try {
-            return jdbcTemplate.queryForObject(sql,
-                    (rs, rowNum) -> new MpaRating(rs.getInt("id"), rs.getString("name"), rs.getString("description")),
-                    id
-            );
-        } catch (EmptyResultDataAccessException e) {
+        MpaRating mpa = getRegistry().findMpaRating(id);
+        if (mpa == null) {
             throw new NotFoundException("MPA с ID " + id + " не найден");
         }
+        return mpa;
     }
-}
\ No newline at end of file
+}
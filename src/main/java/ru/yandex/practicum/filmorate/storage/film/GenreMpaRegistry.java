@@ -0,0 +1,57 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+
+import java.util.List;
+
+/**
+ * Неизменяемый снимок справочников жанров и рейтингов MPA.
+ * Поиск по ID — обращение к массиву, все фильмы ссылаются на одни и те же экземпляры.
+ * При обновлении справочников создается новый снимок, старый не меняется.
+ */
+public final class GenreMpaRegistry {
+    private final Genre[] genresById;
+    private final MpaRating[] mpaRatingsById;
+    private final List<Genre> genres;
+    private final List<MpaRating> mpaRatings;
+
+    private GenreMpaRegistry(List<Genre> genres, List<MpaRating> mpaRatings) {
+        this.genres = List.copyOf(genres);
+        this.mpaRatings = List.copyOf(mpaRatings);
+        this.genresById = new Genre[genres.stream().mapToInt(Genre::getId).max().orElse(-1) + 1];
+        this.genres.forEach(genre -> genresById[genre.getId()] = genre);
+        this.mpaRatingsById = new MpaRating[mpaRatings.stream().mapToInt(MpaRating::getId).max().orElse(-1) + 1];
+        this.mpaRatings.forEach(mpa -> mpaRatingsById[mpa.getId()] = mpa);
+    }
+
+    /**
+     * @param genres     жанры в порядке выдачи, ID неотрицательные
+     * @param mpaRatings рейтинги в порядке выдачи, ID неотрицательные
+     */
+    public static GenreMpaRegistry of(List<Genre> genres, List<MpaRating> mpaRatings) {
+        return new GenreMpaRegistry(genres, mpaRatings);
+    }
+
+    /**
+     * @return жанр или null, если такого ID нет
+     */
+    public Genre findGenre(int id) {
+        return id >= 0 && id < genresById.length ? genresById[id] : null;
+    }
+
+    /**
+     * @return рейтинг MPA или null, если такого ID нет
+     */
+    public MpaRating findMpaRating(int id) {
+        return id >= 0 && id < mpaRatingsById.length ? mpaRatingsById[id] : null;
+    }
+
+    public List<Genre> getGenres() {
+        return genres;
+    }
+
+    public List<MpaRating> getMpaRatings() {
+        return mpaRatings;
+    }
+}
@@ -13,4 +13,14 @@ public interface GenreMpaStorage {
     List<MpaRating> getAllMpaRatings();
 
     MpaRating getMpaRatingById(int id);
-}
\ No newline at end of file
+
+    /**
+     * Возвращает текущий снимок справочников. Снимок неизменяемый, его можно держать на время операции.
+     */
+    GenreMpaRegistry getRegistry();
+
+    /**
+     * Перечитывает справочники из источника и заменяет снимок.
+     */
+    void refresh();
+}
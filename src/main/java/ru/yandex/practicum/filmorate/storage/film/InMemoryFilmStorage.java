@@ -1,38 +1,108 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
+import org.roaringbitmap.RoaringBitmap;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.persistence.MutationLog;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import java.time.Clock;
+import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 public class InMemoryFilmStorage implements FilmStorage {
-    private final Map<Integer, Film> films = new ConcurrentHashMap<>();
+    // Степень двойки, чтобы полоса вычислялась маской
+    private static final int STRIPES = 64;
+
+    private final UserStorage userStorage;
+    private final MutationLog mutationLog;
+    // Упорядоченная карта нужна для постраничной выдачи по ID
+    private final ConcurrentNavigableMap<Integer, Film> films = new ConcurrentSkipListMap<>();
     private final AtomicInteger currentId = new AtomicInteger(1);
+    private final PopularityIndex popularityIndex = new PopularityIndex();
+    // Вторичные индексы популярности: фильтр по жанру или MPA обходит только фильмы этой категории
+    private final Map<Integer, PopularityIndex> popularityByGenre = new ConcurrentHashMap<>();
+    private final Map<Integer, PopularityIndex> popularityByMpa = new ConcurrentHashMap<>();
+    // Жанры и MPA, под которыми фильм лежит во вторичных индексах: лайк меняет только эти индексы
+    private final Map<Integer, FilmCategories> indexedCategories = new ConcurrentHashMap<>();
+    private final TrendingIndex trendingIndex = new TrendingIndex(Clock.systemUTC());
+    // Лайки хранятся только в графе (сжатые битовые множества), а не в Film.likes
+    private final LikeGraph likeGraph = new LikeGraph();
+    // Счетчики лайков по фильмам читаются без блокировки. Лайки одного фильма записываются под его полосой,
+    // поэтому параллельно идут только лайки разных фильмов
+    private final Map<Integer, LongAdder> likeCounters = new ConcurrentHashMap<>();
+    // Изменения одного фильма и его лайков идут под одной полосой, чтобы журнал видел их в том же порядке
+    private final Object[] filmLocks = new Object[STRIPES];
+
+    public InMemoryFilmStorage(UserStorage userStorage) {
+        this(userStorage, MutationLog.NONE);
+    }
+
+    public InMemoryFilmStorage(UserStorage userStorage, MutationLog mutationLog) {
+        this.userStorage = userStorage;
+        this.mutationLog = mutationLog;
+        Arrays.setAll(filmLocks, i -> new Object());
+        userStorage.addDeletionListener(this::removeUserLikes);
+    }
 
     @Override
     public Film create(Film film) {
-        int id = currentId.getAndIncrement();
-        film.setId(id);
-        films.put(id, film);
-        return film;
+        Film created = save(currentId.getAndIncrement(), film);
+        mutationLog.sync();
+        return withRate(created);
+    }
+
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        // Одно ожидание записи журнала на весь пакет
+        List<Film> created = films.stream()
+                .map(film -> withRate(save(currentId.getAndIncrement(), film)))
+                .collect(Collectors.toList());
+        mutationLog.sync();
+        return created;
     }
 
     @Override
     public Film update(Film film) {
-        films.put(film.getId(), film);
-        return film;
+        Film updated = save(film.getId(), film);
+        mutationLog.sync();
+        return withRate(updated);
     }
 
     @Override
     public List<Film> findAll() {
-        return new ArrayList<>(films.values());
+        return films.values().stream()
+                .map(this::withRate)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Film> findPage(int afterId, int limit) {
+        return films.tailMap(afterId, false).values().stream()
+                .limit(limit)
+                .map(this::withRate)
+                .collect(Collectors.toList());
     }
 
     @Override
     public Optional<Film> findById(int id) {
-        return Optional.ofNullable(films.get(id));
+        return Optional.ofNullable(films.get(id)).map(this::withRate);
+    }
+
+    @Override
+    public List<Film> findByIds(Collection<Integer> ids) {
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .map(this::withRate)
+                .collect(Collectors.toList());
     }
 
     @Override
@@ -40,9 +110,18 @@ public class InMemoryFilmStorage implements FilmStorage {
         return films.size();
     }
 
+    @Override
+    public long getTotalLikesCount() {
+        return likeCounters.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
     @Override
     public void delete(int id) {
-        films.remove(id);
+        synchronized (filmLock(id)) {
+            removeFilm(id);
+            mutationLog.filmDeleted(id);
+        }
+        mutationLog.sync();
     }
 
     @Override
@@ -51,39 +130,318 @@ public class InMemoryFilmStorage implements FilmStorage {
     }
 
     @Override
-    public void addLike(int filmId, int userId) {
-        Film film = films.get(filmId);
-        if (film != null) {
-            if (film.getLikes() == null) {
-                film.setLikes(new HashSet<>());
+    public boolean addLike(int filmId, int userId) {
+        checkUserExists(userId);
+        synchronized (filmLock(filmId)) {
+            getExistingFilm(filmId);
+            // Граф сам атомарно проверяет наличие лайка, поэтому повторный лайк из другого потока не засчитается
+            Instant likedAt = Instant.now();
+            if (!applyLike(filmId, userId, likedAt)) {
+                return false;
             }
-            film.getLikes().add(userId);
+            mutationLog.likeAdded(filmId, userId, likedAt);
         }
+        mutationLog.sync();
+        return true;
     }
 
     @Override
-    public void removeLike(int filmId, int userId) {
-        Film film = films.get(filmId);
-        if (film != null && film.getLikes() != null) {
-            film.getLikes().remove(userId);
+    public boolean removeLike(int filmId, int userId) {
+        checkUserExists(userId);
+        synchronized (filmLock(filmId)) {
+            getExistingFilm(filmId);
+            if (!applyUnlike(filmId, userId)) {
+                return false;
+            }
+            mutationLog.likeRemoved(filmId, userId);
         }
+        mutationLog.sync();
+        return true;
     }
 
     @Override
-    public List<Film> getPopularFilms(int count) {
-        return films.values().stream()
-                .sorted((f1, f2) -> {
-                    int likes1 = f1.getLikes() != null ? f1.getLikes().size() : 0;
-                    int likes2 = f2.getLikes() != null ? f2.getLikes().size() : 0;
-                    // Сначала сравниваем по количеству лайков (по убыванию)
-                    int likesComparison = Integer.compare(likes2, likes1);
-                    if (likesComparison != 0) {
-                        return likesComparison;
-                    }
-                    // При равном количестве лайков - по ID (по убыванию)
-                    return Integer.compare(f2.getId(), f1.getId());
-                })
-                .limit(count)
+    public List<Film> getPopularFilms(int count, PopularFilmsFilter filter) {
+        // Индексы уже упорядочены по (лайки DESC, ID DESC), сортировка не нужна
+        return getPopularFilmIds(count, filter).stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .map(this::withRate)
                 .collect(Collectors.toList());
     }
-}
\ No newline at end of file
+
+    @Override
+    public List<Integer> getPopularFilmIds(int count, PopularFilmsFilter filter) {
+        if (filter.isEmpty()) {
+            return Arrays.stream(popularityIndex.top(count)).boxed().collect(Collectors.toList());
+        }
+
+        // Обходим самый узкий из подходящих индексов, остальные условия проверяем по фильму
+        PopularityIndex index = popularityIndex;
+        if (filter.genreId() != null) {
+            index = popularityByGenre.getOrDefault(filter.genreId(), new PopularityIndex());
+        }
+        if (filter.mpaId() != null) {
+            PopularityIndex mpaIndex = popularityByMpa.getOrDefault(filter.mpaId(), new PopularityIndex());
+            if (mpaIndex.size() < index.size()) {
+                index = mpaIndex;
+            }
+        }
+        return Arrays.stream(index.top(count, filmId -> matches(films.get(filmId), filter)))
+                .boxed()
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Film> getTrendingFilms(TrendingWindow window, int count) {
+        return getTrendingFilmIds(window, count).stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .map(this::withRate)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Integer> getTrendingFilmIds(TrendingWindow window, int count) {
+        return Arrays.stream(trendingIndex.top(window, count)).boxed().collect(Collectors.toList());
+    }
+
+    @Override
+    public long getLikesCount(int filmId) {
+        LongAdder counter = likeCounters.get(filmId);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    @Override
+    public LikeGraph getLikeGraph() {
+        return likeGraph;
+    }
+
+    @Override
+    public int reconcileLikesCount() {
+        // Источник истины — граф лайков, сверяем с ним счетчики и индексы популярности
+        int repaired = 0;
+        for (Film film : films.values()) {
+            long likes = likeGraph.countLikers(film.getId());
+            LongAdder counter = likeCounters.computeIfAbsent(film.getId(), id -> new LongAdder());
+            long counted = counter.sum();
+            if (counted != likes || popularityIndex.getLikes(film.getId()) != likes
+                    || !popularityIndex.contains(film.getId())) {
+                repaired++;
+                counter.add(likes - counted);
+            }
+            indexFilm(film, likes);
+        }
+        likeCounters.keySet().retainAll(films.keySet());
+        popularityIndex.retainOnly(films.keySet());
+        popularityByGenre.values().forEach(index -> index.retainOnly(films.keySet()));
+        popularityByMpa.values().forEach(index -> index.retainOnly(films.keySet()));
+        return repaired;
+    }
+
+    // Восстановление из снимка и журнала: без проверок и без записи в журнал
+
+    public void restoreFilm(Film film) {
+        save(film.getId(), film, false);
+        currentId.accumulateAndGet(film.getId() + 1, Math::max);
+    }
+
+    public void restoreFilmDeleted(int filmId) {
+        synchronized (filmLock(filmId)) {
+            removeFilm(filmId);
+        }
+    }
+
+    public void restoreLike(int filmId, int userId, Instant likedAt) {
+        synchronized (filmLock(filmId)) {
+            applyLike(filmId, userId, likedAt);
+        }
+    }
+
+    /**
+     * Загружает лайки фильма из снимка. Время лайков в снимке не хранится, поэтому в тренды они не попадают;
+     * счетчики и индексы популярности пересчитываются после загрузки через {@link #reconcileLikesCount()}.
+     */
+    public void restoreLikers(int filmId, RoaringBitmap likers) {
+        synchronized (filmLock(filmId)) {
+            likers.forEach((int userId) -> likeGraph.add(filmId, userId));
+        }
+    }
+
+    public void restoreLikeRemoved(int filmId, int userId) {
+        synchronized (filmLock(filmId)) {
+            applyUnlike(filmId, userId);
+        }
+    }
+
+    public int getNextId() {
+        return currentId.get();
+    }
+
+    public void restoreNextId(int nextId) {
+        currentId.accumulateAndGet(nextId, Math::max);
+    }
+
+    private Film save(int id, Film film) {
+        return save(id, film, true);
+    }
+
+    private Film save(int id, Film film, boolean logged) {
+        synchronized (filmLock(id)) {
+            film.setId(id);
+            likeCounters.putIfAbsent(id, new LongAdder());
+            films.put(id, film);
+            indexFilm(film, getLikesCount(id));
+            if (logged) {
+                mutationLog.filmSaved(film);
+            }
+        }
+        return film;
+    }
+
+    // Аналог каскадного удаления лайков пользователя в JDBC-хранилище
+    private void removeUserLikes(int userId) {
+        likeGraph.getFilms(userId).forEach((int filmId) -> {
+            synchronized (filmLock(filmId)) {
+                if (applyUnlike(filmId, userId)) {
+                    mutationLog.likeRemoved(filmId, userId);
+                }
+            }
+        });
+        mutationLog.sync();
+    }
+
+    // Вызывается под полосой фильма
+    private void removeFilm(int filmId) {
+        films.remove(filmId);
+        likeCounters.remove(filmId);
+        unindexFilm(filmId);
+        trendingIndex.removeFilm(filmId);
+        likeGraph.removeFilm(filmId);
+    }
+
+    // Вызывается под полосой фильма; лайк несуществующему фильму при восстановлении не учитывается
+    private boolean applyLike(int filmId, int userId, Instant likedAt) {
+        LongAdder counter = likeCounters.get(filmId);
+        if (counter == null || !likeGraph.add(filmId, userId)) {
+            return false;
+        }
+        counter.increment();
+        incrementLikes(filmId, 1);
+        trendingIndex.recordLike(filmId, userId, likedAt);
+        return true;
+    }
+
+    // Вызывается под полосой фильма
+    private boolean applyUnlike(int filmId, int userId) {
+        if (!likeGraph.remove(filmId, userId)) {
+            return false;
+        }
+        LongAdder counter = likeCounters.get(filmId);
+        if (counter != null) {
+            counter.decrement();
+        }
+        incrementLikes(filmId, -1);
+        trendingIndex.recordUnlike(filmId, userId);
+        return true;
+    }
+
+    private Object filmLock(int filmId) {
+        return filmLocks[filmId & (STRIPES - 1)];
+    }
+
+    // Вызывается под полосой фильма
+    private void indexFilm(Film film, long likes) {
+        int filmId = film.getId();
+        popularityIndex.put(filmId, likes);
+        // Жанры и MPA могли измениться, поэтому сначала убираем фильм из прежних вторичных индексов
+        unindexCategories(filmId);
+        FilmCategories categories = FilmCategories.of(film);
+        for (int genreId : categories.genreIds()) {
+            popularityByGenre.computeIfAbsent(genreId, id -> new PopularityIndex()).put(filmId, likes);
+        }
+        if (categories.mpaId() != null) {
+            popularityByMpa.computeIfAbsent(categories.mpaId(), id -> new PopularityIndex()).put(filmId, likes);
+        }
+        indexedCategories.put(filmId, categories);
+    }
+
+    // Вызывается под полосой фильма
+    private void unindexFilm(int filmId) {
+        popularityIndex.remove(filmId);
+        unindexCategories(filmId);
+    }
+
+    private void unindexCategories(int filmId) {
+        FilmCategories categories = indexedCategories.remove(filmId);
+        if (categories == null) {
+            return;
+        }
+        for (int genreId : categories.genreIds()) {
+            popularityByGenre.get(genreId).remove(filmId);
+        }
+        if (categories.mpaId() != null) {
+            popularityByMpa.get(categories.mpaId()).remove(filmId);
+        }
+    }
+
+    // Вызывается под полосой фильма
+    private void incrementLikes(int filmId, long delta) {
+        popularityIndex.increment(filmId, delta);
+        FilmCategories categories = indexedCategories.get(filmId);
+        if (categories == null) {
+            return;
+        }
+        for (int genreId : categories.genreIds()) {
+            popularityByGenre.get(genreId).increment(filmId, delta);
+        }
+        if (categories.mpaId() != null) {
+            popularityByMpa.get(categories.mpaId()).increment(filmId, delta);
+        }
+    }
+
+    private static boolean matches(Film film, PopularFilmsFilter filter) {
+        if (film == null) {
+            return false;
+        }
+        if (filter.genreId() != null && (film.getGenres() == null || film.getGenres().stream()
+                .noneMatch(genre -> genre.getId() == filter.genreId()))) {
+            return false;
+        }
+        if (filter.mpaId() != null && (film.getMpa() == null || film.getMpa().getId() != filter.mpaId())) {
+            return false;
+        }
+        return filter.year() == null
+                || (film.getReleaseDate() != null && film.getReleaseDate().getYear() == filter.year());
+    }
+
+    // Наружу отдаем копию: сохраненный фильм не меняется, а число лайков берется из счетчика, как в JDBC-хранилище
+    private Film withRate(Film film) {
+        return film.toBuilder()
+                .rate((int) getLikesCount(film.getId()))
+                .genres(film.getGenres() == null ? new LinkedHashSet<>() : new LinkedHashSet<>(film.getGenres()))
+                .build();
+    }
+
+    private Film getExistingFilm(int filmId) {
+        Film film = films.get(filmId);
+        if (film == null) {
+            throw new NotFoundException("Фильм с ID " + filmId + " не найден");
+        }
+        return film;
+    }
+
+    // Аналог внешнего ключа film_likes.user_id в JDBC-хранилище
+    private void checkUserExists(int userId) {
+        if (!userStorage.existsById(userId)) {
+            throw new NotFoundException("Пользователь с ID " + userId + " не найден");
+        }
+    }
+
+    private record FilmCategories(int[] genreIds, Integer mpaId) {
+        static FilmCategories of(Film film) {
+            int[] genreIds = film.getGenres() == null ? new int[0]
+                    : film.getGenres().stream().mapToInt(Genre::getId).distinct().toArray();
+            return new FilmCategories(genreIds, film.getMpa() != null ? film.getMpa().getId() : null);
+        }
+    }
+}
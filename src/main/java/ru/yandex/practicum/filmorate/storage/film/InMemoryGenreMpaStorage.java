@@ -4,36 +4,36 @@ import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.MpaRating;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 
 public class InMemoryGenreMpaStorage implements GenreMpaStorage {
-    private final Map<Integer, Genre> genres = new HashMap<>();
-    private final Map<Integer, MpaRating> mpaRatings = new HashMap<>();
+    private final GenreMpaRegistry registry;
 
     public InMemoryGenreMpaStorage() {
         // Инициализируем жанры с корректными названиями
-        genres.put(1, new Genre(1, "Комедия"));
-        genres.put(2, new Genre(2, "Драма"));
-        genres.put(3, new Genre(3, "Мультфильм"));
-        genres.put(4, new Genre(4, "Триллер"));
-        genres.put(5, new Genre(5, "Документальный"));
-        genres.put(6, new Genre(6, "Боевик"));
+        List<Genre> genres = List.of(
+                new Genre(1, "Комедия"),
+                new Genre(2, "Драма"),
+                new Genre(3, "Мультфильм"),
+                new Genre(4, "Триллер"),
+                new Genre(5, "Документальный"),
+                new Genre(6, "Боевик"));
 
         // Инициализируем MPA рейтинги с корректными названиями
-        mpaRatings.put(1, new MpaRating(1, "G", "Нет возрастных ограничений"));
-        mpaRatings.put(2, new MpaRating(2, "PG", "Рекомендуется присутствие родителей"));
-        mpaRatings.put(3, new MpaRating(3, "PG-13", "Детям до 13 лет просмотр не желателен"));
-        mpaRatings.put(4, new MpaRating(4, "R", "Лицам до 17 лет обязательно присутствие взрослого"));
-        mpaRatings.put(5, new MpaRating(5, "NC-17", "Лицам до 18 лет просмотр запрещен"));
+        List<MpaRating> mpaRatings = List.of(
+                new MpaRating(1, "G", "Нет возрастных ограничений"),
+                new MpaRating(2, "PG", "Рекомендуется присутствие родителей"),
+                new MpaRating(3, "PG-13", "Детям до 13 лет просмотр не желателен"),
+                new MpaRating(4, "R", "Лицам до 17 лет обязательно присутствие взрослого"),
+                new MpaRating(5, "NC-17", "Лицам до 18 лет просмотр запрещен"));
+
+        registry = GenreMpaRegistry.of(genres, mpaRatings);
     }
 
     @Override
     public Genre getGenreById(int id) {
-        Genre genre = genres.get(id);
+        Genre genre = registry.findGenre(id);
         if (genre == null) {
             throw new NotFoundException("Жанр с ID " + id + " не найден");
         }
@@ -42,7 +42,7 @@ public class InMemoryGenreMpaStorage implements GenreMpaStorage {
 
     @Override
     public MpaRating getMpaRatingById(int id) {
-        MpaRating mpa = mpaRatings.get(id);
+        MpaRating mpa = registry.findMpaRating(id);
         if (mpa == null) {
             throw new NotFoundException("MPA с ID " + id + " не найден");
         }
@@ -51,11 +51,21 @@ public class InMemoryGenreMpaStorage implements GenreMpaStorage {
 
     @Override
     public List<Genre> getAllGenres() {
-        return new ArrayList<>(genres.values());
+        return registry.getGenres();
     }
 
     @Override
     public List<MpaRating> getAllMpaRatings() {
-        return new ArrayList<>(mpaRatings.values());
+        return registry.getMpaRatings();
+    }
+
+    @Override
+    public GenreMpaRegistry getRegistry() {
+        return registry;
+    }
+
+    @Override
+    public void refresh() {
+        // Справочники заданы в коде и не меняются
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,279 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+/**
+ * Двудольный граф лайков в памяти: для каждого пользователя — сжатое битовое множество фильмов,
+ * для каждого фильма — сжатое битовое множество лайкнувших (Roaring). Хранилище поддерживает его актуальным
+ * при записи лайков, сервисы только читают: методы изменения доступны только хранилищам этого пакета,
+ * а читающие методы отдают копии. Для хранилища в памяти граф — единственный источник лайков.
+ * <p>
+ * Блокировки разбиты на полосы по ID фильма и по ID пользователя, поэтому лайки разных фильмов
+ * не мешают друг другу; лайки одного фильма выстраиваются в очередь на его полосе. Полоса фильма всегда
+ * берется раньше полосы пользователя, и одновременно удерживается не больше одной полосы каждого вида —
+ * так взаимных блокировок не бывает.
+ */
+public class LikeGraph {
+    private static final RoaringBitmap EMPTY = new RoaringBitmap();
+    // Степень двойки, чтобы полоса вычислялась маской
+    private static final int STRIPES = 64;
+
+    private final ReadWriteLock[] filmLocks = newLocks();
+    private final ReadWriteLock[] userLocks = newLocks();
+    private final Map<Integer, RoaringBitmap> filmsByUser = new ConcurrentHashMap<>();
+    private final Map<Integer, RoaringBitmap> likersByFilm = new ConcurrentHashMap<>();
+    // Фильмы, у которых менялось множество лайкнувших с последнего drainChangedFilms
+    private final Set<Integer> changedFilms = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @return true, если лайка еще не было
+     */
+    boolean add(int filmId, int userId) {
+        ReadWriteLock filmLock = filmLock(filmId);
+        filmLock.writeLock().lock();
+        try {
+            if (!likersByFilm.computeIfAbsent(filmId, id -> new RoaringBitmap()).checkedAdd(userId)) {
+                return false;
+            }
+            ReadWriteLock userLock = userLock(userId);
+            userLock.writeLock().lock();
+            try {
+                filmsByUser.computeIfAbsent(userId, id -> new RoaringBitmap()).add(filmId);
+            } finally {
+                userLock.writeLock().unlock();
+            }
+            changedFilms.add(filmId);
+            return true;
+        } finally {
+            filmLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true, если лайк был и удален
+     */
+    boolean remove(int filmId, int userId) {
+        ReadWriteLock filmLock = filmLock(filmId);
+        filmLock.writeLock().lock();
+        try {
+            if (!clear(likersByFilm, filmId, userId)) {
+                return false;
+            }
+            clearUserFilm(userId, filmId);
+            changedFilms.add(filmId);
+            return true;
+        } finally {
+            filmLock.writeLock().unlock();
+        }
+    }
+
+    void removeFilm(int filmId) {
+        ReadWriteLock filmLock = filmLock(filmId);
+        filmLock.writeLock().lock();
+        try {
+            RoaringBitmap likers = likersByFilm.remove(filmId);
+            if (likers != null) {
+                likers.forEach((int userId) -> clearUserFilm(userId, filmId));
+            }
+            changedFilms.add(filmId);
+        } finally {
+            filmLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return копия множества фильмов, которые лайкнул пользователь
+     */
+    public RoaringBitmap getFilms(int userId) {
+        ReadWriteLock userLock = userLock(userId);
+        userLock.readLock().lock();
+        try {
+            return filmsByUser.getOrDefault(userId, EMPTY).clone();
+        } finally {
+            userLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return копия множества пользователей, лайкнувших фильм
+     */
+    public RoaringBitmap getLikers(int filmId) {
+        ReadWriteLock filmLock = filmLock(filmId);
+        filmLock.readLock().lock();
+        try {
+            return likersByFilm.getOrDefault(filmId, EMPTY).clone();
+        } finally {
+            filmLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Передает action не больше limit лайкнувших фильм по возрастанию ID, без копирования множества.
+     * Выполняется под блокировкой чтения полосы фильма, поэтому action не должен менять граф.
+     */
+    public void forEachLiker(int filmId, int limit, IntConsumer action) {
+        ReadWriteLock filmLock = filmLock(filmId);
+        filmLock.readLock().lock();
+        try {
+            IntIterator likers = likersByFilm.getOrDefault(filmId, EMPTY).getIntIterator();
+            for (int visited = 0; visited < limit && likers.hasNext(); visited++) {
+                action.accept(likers.next());
+            }
+        } finally {
+            filmLock.readLock().unlock();
+        }
+    }
+
+    public int countLikers(int filmId) {
+        ReadWriteLock filmLock = filmLock(filmId);
+        filmLock.readLock().lock();
+        try {
+            return likersByFilm.getOrDefault(filmId, EMPTY).getCardinality();
+        } finally {
+            filmLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Считает, сколько фильмов из films лайкнул пользователь, не копируя его множество.
+     */
+    public int countCommonFilms(int userId, RoaringBitmap films) {
+        ReadWriteLock userLock = userLock(userId);
+        userLock.readLock().lock();
+        try {
+            return RoaringBitmap.andCardinality(filmsByUser.getOrDefault(userId, EMPTY), films);
+        } finally {
+            userLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Для каждого фильма, у которого есть общие с filmId лайкнувшие, считает число таких пользователей.
+     */
+    public Map<Integer, Integer> countCoLikes(int filmId) {
+        // Полосу фильма держим только на время копирования: обход зрителей может быть долгим
+        RoaringBitmap likers = getLikers(filmId);
+        Map<Integer, Integer> coLikes = new HashMap<>();
+        IntIterator iterator = likers.getIntIterator();
+        while (iterator.hasNext()) {
+            int userId = iterator.next();
+            ReadWriteLock userLock = userLock(userId);
+            userLock.readLock().lock();
+            try {
+                filmsByUser.getOrDefault(userId, EMPTY).forEach((int other) -> {
+                    if (other != filmId) {
+                        coLikes.merge(other, 1, Integer::sum);
+                    }
+                });
+            } finally {
+                userLock.readLock().unlock();
+            }
+        }
+        return coLikes;
+    }
+
+    /**
+     * Возвращает фильмы, у которых менялось множество лайкнувших с прошлого вызова, и сбрасывает отметки.
+     */
+    public Set<Integer> drainChangedFilms() {
+        // Отметка ставится после изменения графа, поэтому снятая здесь отметка
+        // не может скрыть изменение, которого читатель еще не увидит
+        Set<Integer> changed = new HashSet<>();
+        for (Iterator<Integer> iterator = changedFilms.iterator(); iterator.hasNext(); ) {
+            changed.add(iterator.next());
+            iterator.remove();
+        }
+        return changed;
+    }
+
+    /**
+     * Отмечает измененными фильмы, множество лайкнувших которых отличается от previous.
+     * Вызывается для графа, заново построенного по таблице и еще не опубликованного, перед подменой previous:
+     * так перезагрузка без расхождений не заставляет читателей пересчитывать все фильмы.
+     */
+    void markDifferencesFrom(LikeGraph previous) {
+        Set<Integer> filmIds = new HashSet<>(likersByFilm.keySet());
+        filmIds.addAll(previous.likersByFilm.keySet());
+        for (int filmId : filmIds) {
+            if (!likersByFilm.getOrDefault(filmId, EMPTY).equals(previous.getLikers(filmId))) {
+                changedFilms.add(filmId);
+            }
+        }
+    }
+
+    /**
+     * Переносит отметки об изменениях, которые читатели previous еще не сняли.
+     */
+    void inheritChangedFilms(LikeGraph previous) {
+        changedFilms.addAll(previous.changedFilms);
+    }
+
+    /**
+     * @return объем, занимаемый битмапами графа, в байтах — без учета карт, в которых они лежат
+     */
+    public long getSizeInBytes() {
+        return sizeInBytes(filmsByUser, userLocks) + sizeInBytes(likersByFilm, filmLocks);
+    }
+
+    private void clearUserFilm(int userId, int filmId) {
+        ReadWriteLock userLock = userLock(userId);
+        userLock.writeLock().lock();
+        try {
+            clear(filmsByUser, userId, filmId);
+        } finally {
+            userLock.writeLock().unlock();
+        }
+    }
+
+    private ReadWriteLock filmLock(int filmId) {
+        return filmLocks[filmId & (STRIPES - 1)];
+    }
+
+    private ReadWriteLock userLock(int userId) {
+        return userLocks[userId & (STRIPES - 1)];
+    }
+
+    private static ReadWriteLock[] newLocks() {
+        ReadWriteLock[] locks = new ReadWriteLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+        return locks;
+    }
+
+    private static long sizeInBytes(Map<Integer, RoaringBitmap> sets, ReadWriteLock[] locks) {
+        long total = 0;
+        for (Map.Entry<Integer, RoaringBitmap> entry : sets.entrySet()) {
+            ReadWriteLock lock = locks[entry.getKey() & (STRIPES - 1)];
+            lock.readLock().lock();
+            try {
+                total += entry.getValue().getLongSizeInBytes();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        return total;
+    }
+
+    private static boolean clear(Map<Integer, RoaringBitmap> sets, int key, int bit) {
+        RoaringBitmap set = sets.get(key);
+        if (set == null || !set.checkedRemove(bit)) {
+            return false;
+        }
+        if (set.isEmpty()) {
+            sets.remove(key);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,159 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Групповая запись лайков: накапливает операции like/unlike и отдает их пачкой
+ * (не больше batchSize операций или не дольше maxWait ожидания) в одну транзакцию.
+ * Вызывающий поток блокируется до фиксации своей пачки (не дольше submitTimeout),
+ * поэтому гарантии долговечности не меняются.
+ */
+@Slf4j
+public class LikeWriteBatcher implements AutoCloseable {
+    private final BlockingQueue<LikeOperation> queue = new LinkedBlockingQueue<>();
+    private final int batchSize;
+    private final long maxWaitNanos;
+    private final long submitTimeoutNanos;
+    private final Consumer<List<LikeOperation>> batchWriter;
+    private final DistributionSummary batchSizeSummary;
+    private final Timer flushTimer;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    /**
+     * @param batchWriter   записывает пачку в одной транзакции и завершает result каждой операции
+     * @param submitTimeout сколько submit ждет фиксации пачки, прежде чем вернуть ошибку
+     */
+    public LikeWriteBatcher(int batchSize, Duration maxWait, Duration submitTimeout,
+                            Consumer<List<LikeOperation>> batchWriter, MeterRegistry meterRegistry) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Размер пачки должен быть положительным");
+        }
+        this.batchSize = batchSize;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.submitTimeoutNanos = submitTimeout.toNanos();
+        this.batchWriter = batchWriter;
+        this.batchSizeSummary = DistributionSummary.builder("filmorate.likes.batch.size")
+                .description("Количество операций с лайками в одной транзакции")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("filmorate.likes.batch.flush")
+                .description("Время записи пачки лайков")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.flusher = new Thread(this::run, "like-write-batcher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Ставит операцию в очередь и ждет фиксации пачки, в которую она попала.
+     *
+     * @return true, если операция изменила данные
+     */
+    public boolean submit(int filmId, int userId, boolean add) {
+        if (!running) {
+            throw new IllegalStateException("Запись лайков остановлена");
+        }
+        LikeOperation operation = new LikeOperation(filmId, userId, add, new CompletableFuture<>());
+        queue.add(operation);
+        // close() мог пройти между проверкой и добавлением: если операцию никто не забрал, отказываем
+        if (!running && queue.remove(operation)) {
+            throw new IllegalStateException("Запись лайков остановлена");
+        }
+        try {
+            return operation.result().get(submitTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            // Операция может быть записана позже, но вызывающий больше не ждет
+            throw new QueryTimeoutException("Лайк не записан за " + Duration.ofNanos(submitTimeoutNanos));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание записи лайка прервано", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Операции, которые поток записи не успел забрать, завершаем ошибкой, чтобы никто не ждал их вечно
+        List<LikeOperation> abandoned = new ArrayList<>();
+        queue.drainTo(abandoned);
+        IllegalStateException stopped = new IllegalStateException("Запись лайков остановлена");
+        abandoned.forEach(operation -> operation.result().completeExceptionally(stopped));
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            try {
+                LikeOperation first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<LikeOperation> batch = new ArrayList<>(batchSize);
+                batch.add(first);
+                collect(batch);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void collect(List<LikeOperation> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + maxWaitNanos;
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0) {
+                return;
+            }
+            LikeOperation next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<LikeOperation> batch) {
+        batchSizeSummary.record(batch.size());
+        long start = System.nanoTime();
+        try {
+            batchWriter.accept(batch);
+        } catch (RuntimeException e) {
+            log.error("Ошибка записи пачки из {} лайков: {}", batch.size(), e.getMessage());
+            batch.forEach(operation -> operation.result().completeExceptionally(e));
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public record LikeOperation(int filmId, int userId, boolean add, CompletableFuture<Boolean> result) {
+    }
+}
@@ -0,0 +1,12 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+/**
+ * Условия отбора популярных фильмов. Null в поле означает, что условие не задано.
+ */
+public record PopularFilmsFilter(Integer genreId, Integer mpaId, Integer year) {
+    public static final PopularFilmsFilter NONE = new PopularFilmsFilter(null, null, null);
+
+    public boolean isEmpty() {
+        return genreId == null && mpaId == null && year == null;
+    }
+}
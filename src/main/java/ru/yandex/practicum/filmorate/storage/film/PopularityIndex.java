@@ -0,0 +1,145 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.IntPredicate;
+
+/**
+ * Потокобезопасный индекс популярности фильмов.
+ * Упорядочивает фильмы по количеству лайков (по убыванию), а при равенстве — по ID (по убыванию),
+ * так что выборка первых N фильмов стоит O(N) и не требует сортировки.
+ */
+public class PopularityIndex {
+    // ID фильма -> количество лайков
+    private final Map<Integer, Long> scores = new ConcurrentHashMap<>();
+    // Упакованные ключи (лайки, ID) в порядке выдачи
+    private final ConcurrentSkipListSet<Long> ranking = new ConcurrentSkipListSet<>();
+
+    /**
+     * Добавляет фильм в индекс или заменяет его количество лайков.
+     */
+    public void put(int filmId, long likes) {
+        scores.compute(filmId, (id, old) -> {
+            reorder(id, old, likes);
+            return likes;
+        });
+    }
+
+    /**
+     * Добавляет фильм с указанным количеством лайков, если его еще нет в индексе.
+     */
+    public void putIfAbsent(int filmId, long likes) {
+        scores.computeIfAbsent(filmId, id -> {
+            reorder(id, null, likes);
+            return likes;
+        });
+    }
+
+    /**
+     * Меняет количество лайков фильма на delta. Фильмы, которых нет в индексе, игнорируются.
+     */
+    public void increment(int filmId, long delta) {
+        scores.computeIfPresent(filmId, (id, old) -> {
+            long likes = Math.max(0, old + delta);
+            reorder(id, old, likes);
+            return likes;
+        });
+    }
+
+    /**
+     * Меняет количество лайков фильма на delta, добавляя фильм в индекс при необходимости.
+     * Фильм, у которого не осталось лайков, из индекса удаляется.
+     */
+    public void add(int filmId, long delta) {
+        scores.compute(filmId, (id, old) -> {
+            long likes = Math.max(0, (old == null ? 0 : old) + delta);
+            if (likes == 0) {
+                if (old != null) {
+                    ranking.remove(key(old, id));
+                }
+                return null;
+            }
+            reorder(id, old, likes);
+            return likes;
+        });
+    }
+
+    public void remove(int filmId) {
+        scores.computeIfPresent(filmId, (id, old) -> {
+            ranking.remove(key(old, id));
+            return null;
+        });
+    }
+
+    /**
+     * Удаляет из индекса все фильмы, кроме перечисленных.
+     */
+    public void retainOnly(Set<Integer> filmIds) {
+        scores.keySet().stream()
+                .filter(filmId -> !filmIds.contains(filmId))
+                .forEach(this::remove);
+    }
+
+    public long getLikes(int filmId) {
+        return scores.getOrDefault(filmId, 0L);
+    }
+
+    public boolean contains(int filmId) {
+        return scores.containsKey(filmId);
+    }
+
+    public int size() {
+        return scores.size();
+    }
+
+    /**
+     * Возвращает ID не более чем count самых популярных фильмов.
+     */
+    public int[] top(int count) {
+        return top(count, filmId -> true);
+    }
+
+    /**
+     * Возвращает ID не более чем count самых популярных фильмов, для которых filter вернул true.
+     * Обход идет в порядке популярности и останавливается, как только набрано count фильмов.
+     */
+    public int[] top(int count, IntPredicate filter) {
+        int[] result = new int[Math.min(count, scores.size())];
+        int found = 0;
+        Iterator<Long> iterator = ranking.iterator();
+        while (found < result.length && iterator.hasNext()) {
+            long key = iterator.next();
+            int filmId = filmId(key);
+            // Во время обновления фильм может кратко присутствовать под старым и новым ключом
+            if (scores.getOrDefault(filmId, -1L) == likes(key) && filter.test(filmId)) {
+                result[found++] = filmId;
+            }
+        }
+        return found == result.length ? result : Arrays.copyOf(result, found);
+    }
+
+    private void reorder(int filmId, Long oldLikes, long newLikes) {
+        // Сначала добавляем новый ключ, потом удаляем старый, чтобы читатели не теряли фильм
+        ranking.add(key(newLikes, filmId));
+        if (oldLikes != null && oldLikes != newLikes) {
+            ranking.remove(key(oldLikes, filmId));
+        }
+    }
+
+    // Больше лайков и больший ID дают меньший ключ, т.е. более раннюю позицию в наборе
+    private static long key(long likes, int filmId) {
+        return -((likes << 32) | (filmId & 0xFFFFFFFFL));
+    }
+
+    private static int filmId(long key) {
+        return (int) (-key);
+    }
+
+    private static long likes(long key) {
+        return (-key) >>> 32;
+    }
+}
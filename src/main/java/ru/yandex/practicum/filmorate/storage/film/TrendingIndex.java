@@ -0,0 +1,256 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Скользящие счетчики лайков для трендовых фильмов.
+ * Лайки фильма раскладываются по часовым корзинам; для каждого окна ведется свой {@link PopularityIndex},
+ * из которого при сдвиге окна вычитаются выпавшие корзины. Выборка первых K фильмов стоит O(K),
+ * обновление — O(log N), таблица лайков при запросах не читается.
+ * <p>
+ * Корзины хранятся по фильмам, а изменения одного фильма идут под его полосой, поэтому лайки разных
+ * фильмов друг друга не ждут, а лайки одного фильма выполняются по очереди. Монопольная блокировка берется только раз в час, при сдвиге окон.
+ */
+public class TrendingIndex {
+    private static final long SECONDS_PER_HOUR = 3600;
+    // Степень двойки, чтобы полоса вычислялась маской
+    private static final int STRIPES = 64;
+
+    private final Clock clock;
+    private final Map<TrendingWindow, PopularityIndex> rankings = new EnumMap<>(TrendingWindow.class);
+    // ID фильма -> его лайки внутри самого длинного окна
+    private final Map<Integer, FilmLikes> likesByFilm = new ConcurrentHashMap<>();
+    // Час от начала эпохи -> фильмы с лайками в этот час; нужен, чтобы при сдвиге окон не обходить все фильмы
+    private final ConcurrentNavigableMap<Long, Set<Integer>> filmsByHour = new ConcurrentSkipListMap<>();
+    private final Object[] filmLocks = new Object[STRIPES];
+    // Общая блокировка берется изменениями и чтениями, монопольная — только сдвигом окон
+    private final ReadWriteLock advanceLock = new ReentrantReadWriteLock();
+    private volatile long currentHour;
+
+    public TrendingIndex(Clock clock) {
+        this.clock = clock;
+        for (TrendingWindow window : TrendingWindow.values()) {
+            rankings.put(window, new PopularityIndex());
+        }
+        Arrays.setAll(filmLocks, i -> new Object());
+        this.currentHour = hourOf(clock.instant());
+    }
+
+    /**
+     * Учитывает новый лайк. Лайки старше самого длинного окна игнорируются.
+     */
+    public void recordLike(int filmId, int userId, Instant likedAt) {
+        advance();
+        advanceLock.readLock().lock();
+        try {
+            long hour = Math.min(hourOf(likedAt), currentHour);
+            if (hour <= currentHour - TrendingWindow.maxHours()) {
+                return;
+            }
+            synchronized (filmLock(filmId)) {
+                if (!likesByFilm.computeIfAbsent(filmId, id -> new FilmLikes()).add(hour, userId)) {
+                    return;
+                }
+                filmsByHour.computeIfAbsent(hour, h -> ConcurrentHashMap.newKeySet()).add(filmId);
+                rankings.forEach((window, ranking) -> {
+                    if (isInWindow(hour, window)) {
+                        ranking.add(filmId, 1);
+                    }
+                });
+            }
+        } finally {
+            advanceLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Учитывает удаление лайка. Если лайк старше самого длинного окна, ничего не меняется.
+     */
+    public void recordUnlike(int filmId, int userId) {
+        advance();
+        advanceLock.readLock().lock();
+        try {
+            synchronized (filmLock(filmId)) {
+                FilmLikes likes = likesByFilm.get(filmId);
+                if (likes == null) {
+                    return;
+                }
+                Long hour = likes.remove(userId);
+                if (hour == null) {
+                    return;
+                }
+                if (!likes.hasHour(hour)) {
+                    forgetFilmHour(filmId, hour);
+                }
+                if (likes.isEmpty()) {
+                    likesByFilm.remove(filmId);
+                }
+                rankings.forEach((window, ranking) -> {
+                    if (isInWindow(hour, window)) {
+                        ranking.add(filmId, -1);
+                    }
+                });
+            }
+        } finally {
+            advanceLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Забывает фильм. Стоит O(часов с лайками фильма), остальные фильмы не обходятся.
+     */
+    public void removeFilm(int filmId) {
+        advanceLock.readLock().lock();
+        try {
+            synchronized (filmLock(filmId)) {
+                FilmLikes likes = likesByFilm.remove(filmId);
+                rankings.values().forEach(ranking -> ranking.remove(filmId));
+                if (likes != null) {
+                    likes.hours().forEach(hour -> forgetFilmHour(filmId, hour));
+                }
+            }
+        } finally {
+            advanceLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает ID не более чем count фильмов с наибольшим числом лайков за окно.
+     */
+    public int[] top(TrendingWindow window, int count) {
+        advance();
+        advanceLock.readLock().lock();
+        try {
+            return rankings.get(window).top(count);
+        } finally {
+            advanceLock.readLock().unlock();
+        }
+    }
+
+    // Сдвигает окна к текущему часу: вычитает выпавшие корзины и освобождает корзины старше всех окон
+    private void advance() {
+        long now = hourOf(clock.instant());
+        if (now <= currentHour) {
+            return;
+        }
+        advanceLock.writeLock().lock();
+        try {
+            long from = currentHour;
+            if (now <= from) {
+                return;
+            }
+            rankings.forEach((window, ranking) -> filmsByHour
+                    .subMap(from - window.getHours() + 1, true, now - window.getHours() + 1, false)
+                    .forEach((hour, filmIds) -> filmIds.forEach(filmId ->
+                            ranking.add(filmId, -likesByFilm.get(filmId).count(hour)))));
+
+            NavigableMap<Long, Set<Integer>> expired = filmsByHour.headMap(now - TrendingWindow.maxHours() + 1,
+                    false);
+            expired.forEach((hour, filmIds) -> filmIds.forEach(filmId -> {
+                FilmLikes likes = likesByFilm.get(filmId);
+                likes.removeHour(hour);
+                if (likes.isEmpty()) {
+                    likesByFilm.remove(filmId);
+                }
+            }));
+            expired.clear();
+            currentHour = now;
+        } finally {
+            advanceLock.writeLock().unlock();
+        }
+    }
+
+    // Вызывается под полосой фильма
+    private void forgetFilmHour(int filmId, long hour) {
+        Set<Integer> filmIds = filmsByHour.get(hour);
+        if (filmIds != null) {
+            filmIds.remove(filmId);
+        }
+    }
+
+    private Object filmLock(int filmId) {
+        return filmLocks[filmId & (STRIPES - 1)];
+    }
+
+    private boolean isInWindow(long hour, TrendingWindow window) {
+        return hour > currentHour - window.getHours();
+    }
+
+    private static long hourOf(Instant instant) {
+        return Math.floorDiv(instant.getEpochSecond(), SECONDS_PER_HOUR);
+    }
+
+    /**
+     * Лайки одного фильма по часам. Изменяется под полосой фильма или под монопольной блокировкой сдвига.
+     */
+    private static class FilmLikes {
+        private final NavigableMap<Long, RoaringBitmap> usersByHour = new TreeMap<>();
+        // Все пользователи из корзин фильма: проверка повторного лайка без обхода корзин
+        private final RoaringBitmap users = new RoaringBitmap();
+
+        boolean add(long hour, int userId) {
+            if (!users.checkedAdd(userId)) {
+                return false;
+            }
+            usersByHour.computeIfAbsent(hour, h -> new RoaringBitmap()).add(userId);
+            return true;
+        }
+
+        // Возвращает час удаленного лайка или null, если лайка не было
+        Long remove(int userId) {
+            if (!users.checkedRemove(userId)) {
+                return null;
+            }
+            Iterator<Map.Entry<Long, RoaringBitmap>> iterator = usersByHour.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, RoaringBitmap> bucket = iterator.next();
+                if (bucket.getValue().checkedRemove(userId)) {
+                    if (bucket.getValue().isEmpty()) {
+                        iterator.remove();
+                    }
+                    return bucket.getKey();
+                }
+            }
+            return null;
+        }
+
+        void removeHour(long hour) {
+            RoaringBitmap removed = usersByHour.remove(hour);
+            if (removed != null) {
+                users.andNot(removed);
+            }
+        }
+
+        int count(long hour) {
+            RoaringBitmap bucket = usersByHour.get(hour);
+            return bucket != null ? bucket.getCardinality() : 0;
+        }
+
+        boolean hasHour(long hour) {
+            return usersByHour.containsKey(hour);
+        }
+
+        Set<Long> hours() {
+            return usersByHour.keySet();
+        }
+
+        boolean isEmpty() {
+            return users.isEmpty();
+        }
+    }
+}
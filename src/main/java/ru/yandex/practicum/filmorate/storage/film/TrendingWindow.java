@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Окна, за которые считаются трендовые фильмы. Окно отсчитывается часовыми корзинами,
+ * текущий неполный час входит в окно.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum TrendingWindow {
+    DAY("24h", 24),
+    WEEK("7d", 7 * 24);
+
+    private final String value;
+    private final int hours;
+
+    public static Optional<TrendingWindow> fromValue(String value) {
+        return Arrays.stream(values())
+                .filter(window -> window.value.equalsIgnoreCase(value))
+                .findFirst();
+    }
+
+    public static int maxHours() {
+        return Arrays.stream(values()).mapToInt(TrendingWindow::getHours).max().orElse(0);
+    }
+}
@@ -0,0 +1,359 @@
+package ru.yandex.practicum.filmorate.storage.persistence;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.GenreMpaRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал изменений в файлах-сегментах journal-NNN.log. Запись: длина, CRC32, тело.
+ * Потоки только кладут записи в общий буфер; отдельный поток дописывает накопленное одним write
+ * и одним fsync (групповая фиксация), а {@link #sync()} ждет, пока на диск попадет последняя запись потока.
+ */
+@Slf4j
+class FileMutationLog implements MutationLog, Closeable {
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+
+    private final Path directory;
+    // Порядок захвата: ioLock, затем lock
+    private final ReentrantLock ioLock = new ReentrantLock();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasPending = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream pendingOut = new DataOutputStream(pending);
+    private final CRC32 crc = new CRC32();
+    private final ThreadLocal<long[]> lastSequence = ThreadLocal.withInitial(() -> new long[1]);
+    private final Thread flusher;
+    private FileChannel channel;
+    private long segment;
+    private long appended;
+    private long durable;
+    private boolean closed;
+    private IOException failure;
+
+    FileMutationLog(Path directory, long segment) throws IOException {
+        this.directory = directory;
+        this.segment = segment;
+        this.channel = openSegment(segment);
+        this.flusher = new Thread(this::flushLoop, "filmorate-journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * @return номера существующих сегментов по возрастанию
+     */
+    static List<Long> listSegments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    static Path segmentFile(Path directory, long segment) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Проигрывает записи сегмента в target. Недописанный или поврежденный хвост (падение во время записи)
+     * отбрасывается и обрезается.
+     *
+     * @return число примененных записей
+     */
+    static int replay(Path file, GenreMpaRegistry registry, MutationLog target) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+            CRC32 checksum = new CRC32();
+            long position = 0;
+            int count = 0;
+            while (true) {
+                byte[] payload;
+                int expected;
+                try {
+                    int length = in.readInt();
+                    expected = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_SIZE) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                checksum.reset();
+                checksum.update(payload);
+                if ((int) checksum.getValue() != expected) {
+                    break;
+                }
+                MutationRecords.apply(new DataInputStream(new ByteArrayInputStream(payload)), registry, target);
+                position += Integer.BYTES * 2 + payload.length;
+                count++;
+            }
+            if (position < channel.size()) {
+                log.warn("Хвост журнала {} поврежден, отброшено байт: {}", file.getFileName(), channel.size() - position);
+                channel.truncate(position);
+            }
+            return count;
+        }
+    }
+
+    @Override
+    public void filmSaved(Film film) {
+        append(out -> {
+            out.writeByte(MutationRecords.FILM_SAVED);
+            MutationRecords.writeFilm(out, film);
+        });
+    }
+
+    @Override
+    public void filmDeleted(int filmId) {
+        append(out -> {
+            out.writeByte(MutationRecords.FILM_DELETED);
+            out.writeInt(filmId);
+        });
+    }
+
+    @Override
+    public void likeAdded(int filmId, int userId, Instant likedAt) {
+        append(out -> {
+            out.writeByte(MutationRecords.LIKE_ADDED);
+            out.writeInt(filmId);
+            out.writeInt(userId);
+            out.writeLong(likedAt.getEpochSecond());
+        });
+    }
+
+    @Override
+    public void likeRemoved(int filmId, int userId) {
+        append(out -> {
+            out.writeByte(MutationRecords.LIKE_REMOVED);
+            out.writeInt(filmId);
+            out.writeInt(userId);
+        });
+    }
+
+    @Override
+    public void userSaved(User user) {
+        append(out -> {
+            out.writeByte(MutationRecords.USER_SAVED);
+            MutationRecords.writeUser(out, user);
+        });
+    }
+
+    @Override
+    public void userDeleted(int userId) {
+        append(out -> {
+            out.writeByte(MutationRecords.USER_DELETED);
+            out.writeInt(userId);
+        });
+    }
+
+    @Override
+    public void friendAdded(int userId, int friendId) {
+        append(out -> {
+            out.writeByte(MutationRecords.FRIEND_ADDED);
+            out.writeInt(userId);
+            out.writeInt(friendId);
+        });
+    }
+
+    @Override
+    public void friendRemoved(int userId, int friendId) {
+        append(out -> {
+            out.writeByte(MutationRecords.FRIEND_REMOVED);
+            out.writeInt(userId);
+            out.writeInt(friendId);
+        });
+    }
+
+    @Override
+    public void sync() {
+        long target = lastSequence.get()[0];
+        lock.lock();
+        try {
+            while (durable < target) {
+                if (failure != null) {
+                    throw new IllegalStateException("Журнал изменений недоступен", failure);
+                }
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Дописывает накопленные записи в текущий сегмент и начинает новый.
+     *
+     * @return номер нового сегмента; все записи до него лежат в предыдущих сегментах
+     */
+    long rotate() throws IOException {
+        ioLock.lock();
+        try {
+            flushPending();
+            channel.close();
+            segment++;
+            channel = openSegment(segment);
+            return segment;
+        } catch (IOException e) {
+            fail(e);
+            throw e;
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            hasPending.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ioLock.lock();
+        try {
+            flushPending();
+            channel.close();
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    private void append(RecordWriter writer) {
+        lock.lock();
+        try {
+            if (failure != null || closed) {
+                throw new IllegalStateException("Журнал изменений недоступен", failure);
+            }
+            record.reset();
+            writer.write(recordOut);
+            byte[] payload = record.toByteArray();
+            crc.reset();
+            crc.update(payload);
+            pendingOut.writeInt(payload.length);
+            pendingOut.writeInt((int) crc.getValue());
+            pendingOut.write(payload);
+            lastSequence.get()[0] = ++appended;
+            hasPending.signal();
+        } catch (IOException e) {
+            // Запись идет в память, сюда попадаем только при ошибке кодирования
+            throw new IllegalStateException("Не удалось записать изменение в журнал", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            lock.lock();
+            try {
+                while (pending.size() == 0 && !closed) {
+                    hasPending.awaitUninterruptibly();
+                }
+                if (pending.size() == 0) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            ioLock.lock();
+            try {
+                flushPending();
+            } catch (IOException e) {
+                log.error("Ошибка записи журнала изменений", e);
+                fail(e);
+                return;
+            } finally {
+                ioLock.unlock();
+            }
+        }
+    }
+
+    // Вызывается под ioLock: пачку забираем уже под ним, чтобы пачки не обгоняли друг друга
+    private void flushPending() throws IOException {
+        byte[] batch;
+        long sequence;
+        lock.lock();
+        try {
+            if (pending.size() == 0) {
+                return;
+            }
+            batch = pending.toByteArray();
+            pending.reset();
+            sequence = appended;
+        } finally {
+            lock.unlock();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(batch);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        lock.lock();
+        try {
+            durable = sequence;
+            flushed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Ожидающие sync() получают ошибку вместо вечного ожидания
+    private void fail(IOException e) {
+        lock.lock();
+        try {
+            failure = e;
+            flushed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(segmentFile(directory, number),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(DataOutput out) throws IOException;
+    }
+}
@@ -0,0 +1,262 @@
+package ru.yandex.practicum.filmorate.storage.persistence;
+
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.GenreMpaRegistry;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Долговременное хранение для хранилищ в памяти: журнал изменений с групповой фиксацией
+ * и периодические снимки. При старте загружается последний снимок и проигрывается хвост журнала после него.
+ * <p>
+ * Снимок делается без остановки записи: сначала журнал переключается на новый сегмент, затем состояние
+ * обходится как есть. Изменения, попавшие в снимок частично, повторно применяются из нового сегмента —
+ * все записи журнала задают итоговое значение ключа, поэтому повторное применение безопасно.
+ */
+@Slf4j
+public class MemoryPersistence implements MutationLog, Closeable {
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String SNAPSHOT_TMP_FILE = "snapshot.tmp";
+
+    private final Path directory;
+    private final Duration snapshotInterval;
+    private final GenreMpaRegistry registry;
+    private volatile MutationLog journal = MutationLog.NONE;
+    private FileMutationLog fileLog;
+    private InMemoryFilmStorage filmStorage;
+    private InMemoryUserStorage userStorage;
+    private ScheduledExecutorService scheduler;
+
+    public MemoryPersistence(Path directory, Duration snapshotInterval, GenreMpaRegistry registry) {
+        this.directory = directory;
+        this.snapshotInterval = snapshotInterval;
+        this.registry = registry;
+    }
+
+    /**
+     * Восстанавливает хранилища с диска и начинает журналировать их изменения.
+     * Хранилища должны быть созданы с этим объектом в качестве журнала.
+     */
+    public synchronized void open(InMemoryFilmStorage filmStorage, InMemoryUserStorage userStorage) {
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        long started = System.nanoTime();
+        try {
+            Files.createDirectories(directory);
+            long firstSegment = 0;
+            Path snapshot = directory.resolve(SNAPSHOT_FILE);
+            if (Files.exists(snapshot)) {
+                SnapshotFile.Header header = SnapshotFile.read(snapshot, registry,
+                        (film, likers) -> {
+                            filmStorage.restoreFilm(film);
+                            filmStorage.restoreLikers(film.getId(), likers);
+                        },
+                        (user, friends) -> {
+                            userStorage.restoreUser(user);
+                            userStorage.restoreFriends(user.getId(), friends);
+                        });
+                filmStorage.restoreNextId(header.nextFilmId());
+                userStorage.restoreNextId(header.nextUserId());
+                firstSegment = header.segment();
+            }
+
+            long lastSegment = firstSegment - 1;
+            int records = 0;
+            MutationLog replayer = new Replayer(filmStorage, userStorage);
+            for (long segment : FileMutationLog.listSegments(directory)) {
+                if (segment >= firstSegment) {
+                    records += FileMutationLog.replay(FileMutationLog.segmentFile(directory, segment), registry, replayer);
+                    lastSegment = segment;
+                }
+            }
+            filmStorage.reconcileLikesCount();
+
+            // Новые записи идут в новый сегмент, чтобы не дописывать после возможно обрезанного хвоста
+            fileLog = new FileMutationLog(directory, Math.max(lastSegment + 1, firstSegment));
+            journal = fileLog;
+            log.info("Хранилище в памяти восстановлено из {}: фильмов {}, пользователей {}, записей журнала {}, за {} мс",
+                    directory, filmStorage.getTotalFilmsCount(), userStorage.getTotalUsersCount(), records,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось восстановить хранилище из " + directory, e);
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "filmorate-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = snapshotInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::scheduledSnapshot, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Записывает снимок текущего состояния и удаляет сегменты журнала, которые он покрывает.
+     */
+    public synchronized void snapshot() throws IOException {
+        long started = System.nanoTime();
+        long segment = fileLog.rotate();
+        SnapshotFile.Header header = new SnapshotFile.Header(segment, filmStorage.getNextId(), userStorage.getNextId());
+        Path tmp = directory.resolve(SNAPSHOT_TMP_FILE);
+        int films = 0;
+        int users = 0;
+        try (SnapshotFile.Writer writer = new SnapshotFile.Writer(tmp, header)) {
+            for (Film film : filmStorage.findAll()) {
+                writer.writeFilm(film, filmStorage.getLikeGraph().getLikers(film.getId()));
+                films++;
+            }
+            for (User user : userStorage.findAll()) {
+                writer.writeUser(user, userStorage.getFriendIds(user.getId()));
+                users++;
+            }
+        }
+        Files.move(tmp, directory.resolve(SNAPSHOT_FILE),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+
+        for (long old : FileMutationLog.listSegments(directory)) {
+            if (old < segment) {
+                Files.deleteIfExists(FileMutationLog.segmentFile(directory, old));
+            }
+        }
+        log.info("Снимок хранилища записан: фильмов {}, пользователей {}, за {} мс",
+                films, users, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    /**
+     * Делает последний снимок и закрывает журнал.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (fileLog == null) {
+            return;
+        }
+        scheduler.shutdown();
+        snapshot();
+        fileLog.close();
+        fileLog = null;
+    }
+
+    @Override
+    public void filmSaved(Film film) {
+        journal.filmSaved(film);
+    }
+
+    @Override
+    public void filmDeleted(int filmId) {
+        journal.filmDeleted(filmId);
+    }
+
+    @Override
+    public void likeAdded(int filmId, int userId, Instant likedAt) {
+        journal.likeAdded(filmId, userId, likedAt);
+    }
+
+    @Override
+    public void likeRemoved(int filmId, int userId) {
+        journal.likeRemoved(filmId, userId);
+    }
+
+    @Override
+    public void userSaved(User user) {
+        journal.userSaved(user);
+    }
+
+    @Override
+    public void userDeleted(int userId) {
+        journal.userDeleted(userId);
+    }
+
+    @Override
+    public void friendAdded(int userId, int friendId) {
+        journal.friendAdded(userId, friendId);
+    }
+
+    @Override
+    public void friendRemoved(int userId, int friendId) {
+        journal.friendRemoved(userId, friendId);
+    }
+
+    @Override
+    public void sync() {
+        journal.sync();
+    }
+
+    private void scheduledSnapshot() {
+        try {
+            snapshot();
+        } catch (Exception e) {
+            log.error("Не удалось записать снимок хранилища", e);
+        }
+    }
+
+    // Переименование файла становится надежным только после fsync каталога
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("fsync каталога {} не поддерживается: {}", directory, e.getMessage());
+        }
+    }
+
+    // Применяет записи журнала к хранилищам, не журналируя их повторно
+    private record Replayer(InMemoryFilmStorage filmStorage, InMemoryUserStorage userStorage) implements MutationLog {
+        @Override
+        public void filmSaved(Film film) {
+            filmStorage.restoreFilm(film);
+        }
+
+        @Override
+        public void filmDeleted(int filmId) {
+            filmStorage.restoreFilmDeleted(filmId);
+        }
+
+        @Override
+        public void likeAdded(int filmId, int userId, Instant likedAt) {
+            filmStorage.restoreLike(filmId, userId, likedAt);
+        }
+
+        @Override
+        public void likeRemoved(int filmId, int userId) {
+            filmStorage.restoreLikeRemoved(filmId, userId);
+        }
+
+        @Override
+        public void userSaved(User user) {
+            userStorage.restoreUser(user);
+        }
+
+        @Override
+        public void userDeleted(int userId) {
+            userStorage.restoreUserDeleted(userId);
+        }
+
+        @Override
+        public void friendAdded(int userId, int friendId) {
+            userStorage.restoreFriend(userId, friendId);
+        }
+
+        @Override
+        public void friendRemoved(int userId, int friendId) {
+            userStorage.restoreFriendRemoved(userId, friendId);
+        }
+    }
+}
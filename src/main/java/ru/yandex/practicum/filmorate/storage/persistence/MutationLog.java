@@ -0,0 +1,45 @@
+package ru.yandex.practicum.filmorate.storage.persistence;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.Instant;
+
+/**
+ * Журнал изменений хранилищ в памяти.
+ * Хранилище сообщает об изменении сразу после его применения и внутри той же блокировки,
+ * поэтому записи об одном фильме или пользователе идут в журнале в том же порядке, что и в памяти.
+ * {@link #sync()} вызывается уже после выхода из блокировки и ждет, пока записи текущего потока
+ * окажутся на диске.
+ */
+public interface MutationLog {
+    MutationLog NONE = new MutationLog() {
+    };
+
+    default void filmSaved(Film film) {
+    }
+
+    default void filmDeleted(int filmId) {
+    }
+
+    default void likeAdded(int filmId, int userId, Instant likedAt) {
+    }
+
+    default void likeRemoved(int filmId, int userId) {
+    }
+
+    default void userSaved(User user) {
+    }
+
+    default void userDeleted(int userId) {
+    }
+
+    default void friendAdded(int userId, int friendId) {
+    }
+
+    default void friendRemoved(int userId, int friendId) {
+    }
+
+    default void sync() {
+    }
+}
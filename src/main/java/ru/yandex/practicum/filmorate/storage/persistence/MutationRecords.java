@@ -0,0 +1,142 @@
+package ru.yandex.practicum.filmorate.storage.persistence;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.GenreMpaRegistry;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Двоичный формат записей журнала и снимка. Жанры и рейтинг MPA хранятся только по ID
+ * и при чтении заменяются экземплярами из справочника.
+ */
+final class MutationRecords {
+    static final byte FILM_SAVED = 1;
+    static final byte FILM_DELETED = 2;
+    static final byte LIKE_ADDED = 3;
+    static final byte LIKE_REMOVED = 4;
+    static final byte USER_SAVED = 5;
+    static final byte USER_DELETED = 6;
+    static final byte FRIEND_ADDED = 7;
+    static final byte FRIEND_REMOVED = 8;
+
+    private MutationRecords() {
+    }
+
+    /**
+     * Читает одну запись журнала и передает ее target.
+     */
+    static void apply(DataInput in, GenreMpaRegistry registry, MutationLog target) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case FILM_SAVED -> target.filmSaved(readFilm(in, registry));
+            case FILM_DELETED -> target.filmDeleted(in.readInt());
+            case LIKE_ADDED -> target.likeAdded(in.readInt(), in.readInt(), Instant.ofEpochSecond(in.readLong()));
+            case LIKE_REMOVED -> target.likeRemoved(in.readInt(), in.readInt());
+            case USER_SAVED -> target.userSaved(readUser(in));
+            case USER_DELETED -> target.userDeleted(in.readInt());
+            case FRIEND_ADDED -> target.friendAdded(in.readInt(), in.readInt());
+            case FRIEND_REMOVED -> target.friendRemoved(in.readInt(), in.readInt());
+            default -> throw new IOException("Неизвестный тип записи журнала: " + type);
+        }
+    }
+
+    static void writeFilm(DataOutput out, Film film) throws IOException {
+        out.writeInt(film.getId());
+        writeString(out, film.getName());
+        writeString(out, film.getDescription());
+        writeDate(out, film.getReleaseDate());
+        writeInteger(out, film.getDuration());
+        writeInteger(out, film.getRate());
+        writeInteger(out, film.getMpa() != null ? film.getMpa().getId() : null);
+        Set<Genre> genres = film.getGenres() != null ? film.getGenres() : Set.of();
+        out.writeShort(genres.size());
+        for (Genre genre : genres) {
+            out.writeInt(genre.getId());
+        }
+    }
+
+    static Film readFilm(DataInput in, GenreMpaRegistry registry) throws IOException {
+        Film film = Film.builder()
+                .id(in.readInt())
+                .name(readString(in))
+                .description(readString(in))
+                .releaseDate(readDate(in))
+                .duration(readInteger(in))
+                .rate(readInteger(in))
+                .build();
+        Integer mpaId = readInteger(in);
+        if (mpaId != null) {
+            MpaRating mpa = registry.findMpaRating(mpaId);
+            film.setMpa(mpa != null ? mpa : new MpaRating(mpaId, null, null));
+        }
+        int genreCount = in.readShort();
+        Set<Genre> genres = new LinkedHashSet<>();
+        for (int i = 0; i < genreCount; i++) {
+            int genreId = in.readInt();
+            Genre genre = registry.findGenre(genreId);
+            genres.add(genre != null ? genre : new Genre(genreId, null));
+        }
+        film.setGenres(genres);
+        return film;
+    }
+
+    static void writeUser(DataOutput out, User user) throws IOException {
+        out.writeInt(user.getId());
+        writeString(out, user.getEmail());
+        writeString(out, user.getLogin());
+        writeString(out, user.getName());
+        writeDate(out, user.getBirthday());
+    }
+
+    static User readUser(DataInput in) throws IOException {
+        return User.builder()
+                .id(in.readInt())
+                .email(readString(in))
+                .login(readString(in))
+                .name(readString(in))
+                .birthday(readDate(in))
+                .build();
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeInteger(DataOutput out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    private static void writeDate(DataOutput out, LocalDate value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.toEpochDay());
+        }
+    }
+
+    private static LocalDate readDate(DataInput in) throws IOException {
+        return in.readBoolean() ? LocalDate.ofEpochDay(in.readLong()) : null;
+    }
+}
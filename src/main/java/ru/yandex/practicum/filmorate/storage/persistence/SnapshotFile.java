@@ -0,0 +1,175 @@
+package ru.yandex.practicum.filmorate.storage.persistence;
+
+import org.roaringbitmap.RoaringBitmap;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.GenreMpaRegistry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+
+/**
+ * Двоичный снимок хранилищ в памяти. Файл пишется и читается через отображение в память окнами
+ * по {@link #WINDOW_SIZE} байт. Лайки фильма и друзья пользователя хранятся сериализованными Roaring-битмапами.
+ * Формат: заголовок (сигнатура, версия, номер сегмента журнала, следующие ID), затем записи
+ * (вид, длина, тело) и маркер конца — без маркера снимок считается недописанным.
+ */
+final class SnapshotFile {
+    private static final int MAGIC = 0x464C4D53;
+    private static final int VERSION = 1;
+    private static final int WINDOW_SIZE = 64 << 20;
+    private static final byte END = 0;
+    private static final byte FILM = 1;
+    private static final byte USER = 2;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * @param segment    первый сегмент журнала, который нужно проиграть поверх снимка
+     * @param nextFilmId следующий ID фильма на момент начала снимка
+     * @param nextUserId следующий ID пользователя на момент начала снимка
+     */
+    record Header(long segment, int nextFilmId, int nextUserId) {
+    }
+
+    static Header read(Path file, GenreMpaRegistry registry,
+                       BiConsumer<Film, RoaringBitmap> films, BiConsumer<User, RoaringBitmap> users) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedReader reader = new MappedReader(channel);
+            reader.ensure(Integer.BYTES * 4 + Long.BYTES);
+            if (reader.window.getInt() != MAGIC || reader.window.getInt() != VERSION) {
+                throw new IOException("Неизвестный формат снимка " + file);
+            }
+            Header header = new Header(reader.window.getLong(), reader.window.getInt(), reader.window.getInt());
+            while (true) {
+                reader.ensure(1);
+                byte kind = reader.window.get();
+                if (kind == END) {
+                    return header;
+                }
+                reader.ensure(Integer.BYTES);
+                byte[] payload = new byte[reader.window.getInt()];
+                reader.ensure(payload.length);
+                reader.window.get(payload);
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+                RoaringBitmap relations = new RoaringBitmap();
+                switch (kind) {
+                    case FILM -> {
+                        Film film = MutationRecords.readFilm(in, registry);
+                        relations.deserialize(in);
+                        films.accept(film, relations);
+                    }
+                    case USER -> {
+                        User user = MutationRecords.readUser(in);
+                        relations.deserialize(in);
+                        users.accept(user, relations);
+                    }
+                    default -> throw new IOException("Неизвестный вид записи снимка: " + kind);
+                }
+            }
+        }
+    }
+
+    static final class Writer implements Closeable {
+        private final FileChannel channel;
+        private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+        private final DataOutputStream recordOut = new DataOutputStream(record);
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        Writer(Path file, Header header) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            window = channel.map(FileChannel.MapMode.READ_WRITE, 0, WINDOW_SIZE);
+            window.putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putLong(header.segment())
+                    .putInt(header.nextFilmId())
+                    .putInt(header.nextUserId());
+        }
+
+        void writeFilm(Film film, RoaringBitmap likers) throws IOException {
+            record.reset();
+            MutationRecords.writeFilm(recordOut, film);
+            likers.runOptimize();
+            likers.serialize(recordOut);
+            put(FILM);
+        }
+
+        void writeUser(User user, RoaringBitmap friends) throws IOException {
+            record.reset();
+            MutationRecords.writeUser(recordOut, user);
+            friends.runOptimize();
+            friends.serialize(recordOut);
+            put(USER);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                ensure(1);
+                window.put(END);
+                long end = windowStart + window.position();
+                window.force();
+                // Последнее окно отображено с запасом, лишний хвост файла отрезаем
+                channel.truncate(end);
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void put(byte kind) throws IOException {
+            byte[] payload = record.toByteArray();
+            ensure(1 + Integer.BYTES + payload.length);
+            window.put(kind).putInt(payload.length).put(payload);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (window.remaining() >= bytes) {
+                return;
+            }
+            long position = windowStart + window.position();
+            window.force();
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(WINDOW_SIZE, bytes));
+        }
+    }
+
+    private static final class MappedReader {
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        MappedReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.window = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(WINDOW_SIZE, size));
+        }
+
+        // Если запись не помещается в текущее окно, отображаем новое окно с начала записи
+        void ensure(int bytes) throws IOException {
+            if (window.remaining() >= bytes) {
+                return;
+            }
+            long position = windowStart + window.position();
+            if (position + bytes > size) {
+                throw new IOException("Снимок обрывается на позиции " + position);
+            }
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(Math.max(WINDOW_SIZE, bytes), size - position));
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+/**
+ * Граф дружбы в памяти: для каждого пользователя — сжатое битовое множество ID друзей (Roaring).
+ * Хранилище поддерживает его актуальным при изменении дружбы, сервисы только читают.
+ * Общие друзья — одно пересечение битмапов без обращения к базе.
+ * <p>
+ * Ребро A → B означает, что B виден в списке друзей A: пара с ребрами в обе стороны — подтвержденная
+ * дружба, с ребром в одну сторону — запрос дружбы от A. Обратный индекс (у кого пользователь в друзьях)
+ * дает входящие запросы и нужен для удаления пользователя.
+ */
+public class FriendGraph {
+    private static final RoaringBitmap EMPTY = new RoaringBitmap();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, RoaringBitmap> friendsByUser = new HashMap<>();
+    private final Map<Integer, RoaringBitmap> followersByUser = new HashMap<>();
+
+    /**
+     * @return true, если связи еще не было
+     */
+    public boolean add(int userId, int friendId) {
+        lock.writeLock().lock();
+        try {
+            if (!friendsByUser.computeIfAbsent(userId, id -> new RoaringBitmap()).checkedAdd(friendId)) {
+                return false;
+            }
+            followersByUser.computeIfAbsent(friendId, id -> new RoaringBitmap()).add(userId);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true, если связь была и удалена
+     */
+    public boolean remove(int userId, int friendId) {
+        lock.writeLock().lock();
+        try {
+            if (!clear(friendsByUser, userId, friendId)) {
+                return false;
+            }
+            clear(followersByUser, friendId, userId);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Удаляет пользователя вместе со всеми связями в обе стороны.
+     */
+    public void removeUser(int userId) {
+        lock.writeLock().lock();
+        try {
+            RoaringBitmap friends = friendsByUser.remove(userId);
+            if (friends != null) {
+                friends.forEach((int friendId) -> clear(followersByUser, friendId, userId));
+            }
+            RoaringBitmap followers = followersByUser.remove(userId);
+            if (followers != null) {
+                followers.forEach((int followerId) -> clear(friendsByUser, followerId, userId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return копия множества ID друзей пользователя
+     */
+    public RoaringBitmap getFriends(int userId) {
+        lock.readLock().lock();
+        try {
+            return friendsByUser.getOrDefault(userId, EMPTY).clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return ID друзей пользователя по возрастанию, для поля {@code User.friends}
+     */
+    public Set<Integer> getFriendIds(int userId) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap friends = friendsByUser.getOrDefault(userId, EMPTY);
+            Set<Integer> result = new LinkedHashSet<>(friends.getCardinality() * 2);
+            friends.forEach((int friendId) -> result.add(friendId));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Передает action не больше limit друзей пользователя без копирования множества. Если друзей больше,
+     * берется равномерная случайная выборка: случайные порядковые номера без повторов переводятся в ID
+     * через {@link RoaringBitmap#select}, так что выборка не смещена к меньшим ID.
+     * Выполняется под блокировкой чтения, поэтому action не должен обращаться к графу.
+     */
+    public void forEachFriend(int userId, int limit, Random random, IntConsumer action) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap friends = friendsByUser.getOrDefault(userId, EMPTY);
+            int count = friends.getCardinality();
+            if (count <= limit) {
+                friends.forEach((int friendId) -> action.accept(friendId));
+                return;
+            }
+            sampleRanks(count, limit, random).forEach((int rank) -> action.accept(friends.select(rank)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean hasFriend(int userId, int friendId) {
+        lock.readLock().lock();
+        try {
+            return friendsByUser.getOrDefault(userId, EMPTY).contains(friendId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return ID пользователей, у которых userId в друзьях без взаимности, — входящие запросы дружбы
+     */
+    public RoaringBitmap getRequests(int userId) {
+        lock.readLock().lock();
+        try {
+            return RoaringBitmap.andNot(followersByUser.getOrDefault(userId, EMPTY),
+                    friendsByUser.getOrDefault(userId, EMPTY));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return общее число ребер графа
+     */
+    public long countLinks() {
+        lock.readLock().lock();
+        try {
+            return friendsByUser.values().stream().mapToLong(RoaringBitmap::getLongCardinality).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int countFriends(int userId) {
+        lock.readLock().lock();
+        try {
+            return friendsByUser.getOrDefault(userId, EMPTY).getCardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return ID друзей, общих для двух пользователей, по возрастанию
+     */
+    public RoaringBitmap getCommonFriends(int userId, int otherId) {
+        lock.readLock().lock();
+        try {
+            return RoaringBitmap.and(friendsByUser.getOrDefault(userId, EMPTY),
+                    friendsByUser.getOrDefault(otherId, EMPTY));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return объем, занимаемый битмапами графа, в байтах — без учета карт, в которых они лежат
+     */
+    public long getSizeInBytes() {
+        lock.readLock().lock();
+        try {
+            return sizeInBytes(friendsByUser) + sizeInBytes(followersByUser);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Алгоритм Флойда: limit различных номеров из [0, count) за limit шагов, без перемешивания всего диапазона
+    private static RoaringBitmap sampleRanks(int count, int limit, Random random) {
+        RoaringBitmap ranks = new RoaringBitmap();
+        for (int bound = count - limit; bound < count; bound++) {
+            int rank = random.nextInt(bound + 1);
+            if (!ranks.checkedAdd(rank)) {
+                ranks.add(bound);
+            }
+        }
+        return ranks;
+    }
+
+    private static long sizeInBytes(Map<Integer, RoaringBitmap> relations) {
+        return relations.values().stream().mapToLong(RoaringBitmap::getLongSizeInBytes).sum();
+    }
+
+    private static boolean clear(Map<Integer, RoaringBitmap> relations, int key, int value) {
+        RoaringBitmap values = relations.get(key);
+        if (values == null || !values.checkedRemove(value)) {
+            return false;
+        }
+        if (values.isEmpty()) {
+            relations.remove(key);
+        }
+        return true;
+    }
+}
@@ -1,43 +1,97 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
+import org.roaringbitmap.RoaringBitmap;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.persistence.MutationLog;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 
 public class InMemoryUserStorage implements UserStorage {
-    private final Map<Integer, User> users = new ConcurrentHashMap<>();
+    // Степень двойки, чтобы полоса вычислялась маской
+    private static final int STRIPES = 64;
+
+    private final MutationLog mutationLog;
+    private final ConcurrentNavigableMap<Integer, User> users = new ConcurrentSkipListMap<>();
     private final AtomicInteger nextId = new AtomicInteger(1);
+    // Друзья хранятся в графе сжатыми битовыми множествами, а не в User.friends: поле заполняется
+    // из графа в копиях, которые отдаются наружу, как и в хранилище на базе данных
+    private final FriendGraph friendGraph = new FriendGraph();
+    // Изменения одного пользователя идут под одной полосой, чтобы журнал видел их в том же порядке
+    private final Object[] userLocks = new Object[STRIPES];
+    private final List<IntConsumer> deletionListeners = new CopyOnWriteArrayList<>();
+
+    public InMemoryUserStorage() {
+        this(MutationLog.NONE);
+    }
+
+    public InMemoryUserStorage(MutationLog mutationLog) {
+        this.mutationLog = mutationLog;
+        Arrays.setAll(userLocks, i -> new Object());
+    }
 
     @Override
     public User create(User user) {
-        int id = nextId.getAndIncrement();
-        user.setId(id);
-        users.put(id, user);
-        return user;
+        save(nextId.getAndIncrement(), user, true);
+        mutationLog.sync();
+        return withFriends(user);
     }
 
     @Override
     public User update(User user) {
-        users.put(user.getId(), user);
-        return user;
+        save(user.getId(), user, true);
+        mutationLog.sync();
+        return withFriends(user);
     }
 
     @Override
     public List<User> findAll() {
-        return new ArrayList<>(users.values());
+        return users.values().stream()
+                .map(this::withFriends)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<User> findPage(int afterId, int limit) {
+        return users.tailMap(afterId, false).values().stream()
+                .limit(limit)
+                .map(this::withFriends)
+                .collect(Collectors.toList());
     }
 
     @Override
     public Optional<User> findById(int id) {
-        return Optional.ofNullable(users.get(id));
+        return Optional.ofNullable(users.get(id)).map(this::withFriends);
+    }
+
+    @Override
+    public List<User> findByIds(Collection<Integer> ids) {
+        return ids.stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .map(this::withFriends)
+                .collect(Collectors.toList());
     }
 
     @Override
     public void delete(int id) {
-        users.remove(id);
+        synchronized (userLock(id)) {
+            users.remove(id);
+            friendGraph.removeUser(id);
+            mutationLog.userDeleted(id);
+        }
+        mutationLog.sync();
+        deletionListeners.forEach(listener -> listener.accept(id));
+    }
+
+    @Override
+    public void addDeletionListener(IntConsumer listener) {
+        deletionListeners.add(listener);
     }
 
     @Override
@@ -46,50 +100,163 @@ public class InMemoryUserStorage implements UserStorage {
     }
 
     @Override
-    public void addFriend(int userId, int friendId) {
-        User user = users.get(userId);
-        if (user != null) {
-            if (user.getFriends() == null) {
-                user.setFriends(new HashSet<>());
+    public int getTotalUsersCount() {
+        return users.size();
+    }
+
+    @Override
+    public long getTotalFriendLinksCount() {
+        return friendGraph.countLinks();
+    }
+
+    @Override
+    public boolean addFriend(int userId, int friendId) {
+        synchronized (pairLock(userId, friendId)) {
+            if (!users.containsKey(userId) || !friendGraph.add(userId, friendId)) {
+                return false;
             }
-            user.getFriends().add(friendId);
+            mutationLog.friendAdded(userId, friendId);
         }
+        mutationLog.sync();
+        return true;
     }
 
     @Override
-    public void removeFriend(int userId, int friendId) {
-        User user = users.get(userId);
-        if (user != null && user.getFriends() != null) {
-            user.getFriends().remove(friendId);
+    public boolean removeFriend(int userId, int friendId) {
+        synchronized (pairLock(userId, friendId)) {
+            if (!friendGraph.remove(userId, friendId)) {
+                return false;
+            }
+            mutationLog.friendRemoved(userId, friendId);
         }
+        mutationLog.sync();
+        return true;
     }
 
     @Override
-    public List<User> getFriends(int userId) {
-        User user = users.get(userId);
-        if (user == null || user.getFriends() == null) {
-            return new ArrayList<>();
+    public boolean acceptFriendRequest(int userId, int requesterId) {
+        synchronized (pairLock(userId, requesterId)) {
+            if (!isPendingRequest(userId, requesterId)) {
+                return false;
+            }
+            friendGraph.add(userId, requesterId);
+            mutationLog.friendAdded(userId, requesterId);
         }
-        return user.getFriends().stream()
-                .map(users::get)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        mutationLog.sync();
+        return true;
+    }
+
+    @Override
+    public boolean declineFriendRequest(int userId, int requesterId) {
+        synchronized (pairLock(userId, requesterId)) {
+            if (!isPendingRequest(userId, requesterId)) {
+                return false;
+            }
+            friendGraph.remove(requesterId, userId);
+            mutationLog.friendRemoved(requesterId, userId);
+        }
+        mutationLog.sync();
+        return true;
+    }
+
+    @Override
+    public List<User> getFriends(int userId) {
+        return toUsers(friendGraph.getFriends(userId));
+    }
+
+    @Override
+    public List<User> getFriendRequests(int userId) {
+        return toUsers(friendGraph.getRequests(userId));
     }
 
     @Override
     public List<User> getCommonFriends(int userId, int otherId) {
-        User user = users.get(userId);
-        User otherUser = users.get(otherId);
+        return toUsers(friendGraph.getCommonFriends(userId, otherId));
+    }
+
+    @Override
+    public FriendGraph getFriendGraph() {
+        return friendGraph;
+    }
+
+    /**
+     * @return копия множества ID друзей пользователя
+     */
+    public RoaringBitmap getFriendIds(int userId) {
+        return friendGraph.getFriends(userId);
+    }
 
-        if (user == null || otherUser == null ||
-                user.getFriends() == null || otherUser.getFriends() == null) {
-            return new ArrayList<>();
+    // Восстановление из снимка и журнала: без проверок и без записи в журнал
+
+    public void restoreUser(User user) {
+        save(user.getId(), user, false);
+        nextId.accumulateAndGet(user.getId() + 1, Math::max);
+    }
+
+    public void restoreUserDeleted(int userId) {
+        users.remove(userId);
+        friendGraph.removeUser(userId);
+    }
+
+    public void restoreFriends(int userId, RoaringBitmap friendIds) {
+        friendIds.forEach((int friendId) -> friendGraph.add(userId, friendId));
+    }
+
+    public void restoreFriend(int userId, int friendId) {
+        friendGraph.add(userId, friendId);
+    }
+
+    public void restoreFriendRemoved(int userId, int friendId) {
+        friendGraph.remove(userId, friendId);
+    }
+
+    public int getNextId() {
+        return nextId.get();
+    }
+
+    public void restoreNextId(int id) {
+        nextId.accumulateAndGet(id, Math::max);
+    }
+
+    private void save(int id, User user, boolean logged) {
+        synchronized (userLock(id)) {
+            user.setId(id);
+            users.put(id, user);
+            if (logged) {
+                mutationLog.userSaved(user);
+            }
         }
+    }
 
-        return user.getFriends().stream()
-                .filter(friendId -> otherUser.getFriends().contains(friendId))
-                .map(users::get)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+    private Object userLock(int userId) {
+        return userLocks[userId & (STRIPES - 1)];
+    }
+
+    // Все изменения пары идут под полосой меньшего ID, как строка пары в таблице friendships
+    private Object pairLock(int userId, int friendId) {
+        return userLock(Math.min(userId, friendId));
+    }
+
+    // Вызывается под pairLock
+    private boolean isPendingRequest(int userId, int requesterId) {
+        return friendGraph.hasFriend(requesterId, userId) && !friendGraph.hasFriend(userId, requesterId);
+    }
+
+    // Наружу отдаем копию: сохраненный объект не меняется, а друзья берутся из графа
+    private User withFriends(User user) {
+        return user.toBuilder()
+                .friends(friendGraph.getFriendIds(user.getId()))
+                .build();
+    }
+
+    private List<User> toUsers(RoaringBitmap ids) {
+        List<User> result = new ArrayList<>(ids.getCardinality());
+        ids.forEach((int id) -> {
+            User user = users.get(id);
+            if (user != null) {
+                result.add(withFriends(user));
+            }
+        });
+        return result;
     }
-}
\ No newline at end of file
+}
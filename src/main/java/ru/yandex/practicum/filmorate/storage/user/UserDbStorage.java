@@ -1,19 +1,72 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.FriendshipStatus;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.ChunkedIdQuery;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
 
+@Slf4j
 @RequiredArgsConstructor
 public class UserDbStorage implements UserStorage {
+    // Пара хранится одной строкой (меньший ID, больший ID), поэтому друзей ищем по обоим столбцам:
+    // по user_id работает первичный ключ, по friend_id — отдельный индекс
+    private static final String VISIBLE_FRIEND_IDS_SQL =
+            "SELECT friend_id AS id FROM friendships " +
+            "WHERE user_id = ? AND (status = 'CONFIRMED' OR requester_id = user_id) " +
+            "UNION ALL " +
+            "SELECT user_id AS id FROM friendships " +
+            "WHERE friend_id = ? AND (status = 'CONFIRMED' OR requester_id = friend_id)";
+    private static final String FRIENDSHIP_COLUMNS = "SELECT user_id, friend_id, requester_id, status FROM friendships ";
+    // Степень двойки, чтобы полоса вычислялась маской
+    private static final int STRIPES = 64;
+
     private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    // Копия таблицы friendships в памяти: общие друзья считаются пересечением битмапов, а не двойным join.
+    // Запись пары в таблицу и в граф идет под полосой меньшего ID, поэтому граф видит изменения пары
+    // в том же порядке, что и таблица. Перезагрузка строит новый граф под всеми полосами и подменяет текущий
+    private volatile FriendGraph friendGraph = new FriendGraph();
+    private final Lock[] pairLocks = newLocks();
+    private final List<IntConsumer> deletionListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Строит граф дружбы по таблице friendships и подменяет им текущий. Вызывается при старте.
+     * На время загрузки изменения дружбы ждут, а чтения продолжают видеть прежний граф.
+     */
+    @PostConstruct
+    public void loadFriendGraph() {
+        lockAll();
+        try {
+            FriendGraph loaded = new FriendGraph();
+            int[] pairs = new int[1];
+            jdbcTemplate.query(FRIENDSHIP_COLUMNS, rs -> {
+                visitEdges(rs, loaded::add);
+                pairs[0]++;
+            });
+            friendGraph = loaded;
+            log.info("Storage: Граф дружбы загружен, пар: {}", pairs[0]);
+        } finally {
+            unlockAll();
+        }
+    }
 
     @Override
     public User create(User user) {
@@ -29,6 +82,7 @@ public class UserDbStorage implements UserStorage {
 
         Number id = simpleJdbcInsert.executeAndReturnKey(parameters);
         user.setId(id.intValue());
+        user.setFriends(new HashSet<>());
         return user;
     }
 
@@ -45,17 +99,22 @@ public class UserDbStorage implements UserStorage {
         if (rowsUpdated == 0) {
             throw new NotFoundException("Пользователь с ID " + user.getId() + " не найден");
         }
+        user.setFriends(friendGraph.getFriendIds(user.getId()));
         return user;
     }
 
     @Override
     public List<User> findAll() {
-        String sql = "SELECT * FROM users";
-        List<User> users = jdbcTemplate.query(sql, new UserRowMapper());
+        String sql = "SELECT * FROM users ORDER BY id";
+        // Друзья берутся из графа в памяти, таблица friendships не читается
+        return withFriends(jdbcTemplate.query(sql, new UserRowMapper()));
+    }
 
-        // Загружаем друзей для каждого пользователя
-        users.forEach(this::loadFriends);
-        return users;
+    @Override
+    public List<User> findPage(int afterId, int limit) {
+        // Keyset-пагинация по первичному ключу: стоимость не зависит от числа пользователей
+        String sql = "SELECT * FROM users WHERE id > ? ORDER BY id LIMIT ?";
+        return withFriends(jdbcTemplate.query(sql, new UserRowMapper(), afterId, limit));
     }
 
     @Override
@@ -68,14 +127,52 @@ public class UserDbStorage implements UserStorage {
         }
 
         User user = users.get(0);
-        loadFriends(user);
+        user.setFriends(friendGraph.getFriendIds(id));
         return Optional.of(user);
     }
 
+    @Override
+    public List<User> findByIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<User> users = withFriends(ChunkedIdQuery.query(jdbcTemplate, "SELECT * FROM users WHERE id IN (%s)",
+                new UserRowMapper(), ids));
+        Map<Integer, User> usersById = users.stream()
+                .collect(Collectors.toMap(User::getId, user -> user));
+
+        // Сохраняем порядок запрошенных ID, отсутствующих пользователей пропускаем
+        return ids.stream()
+                .map(usersById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
     @Override
     public void delete(int id) {
+        // Лайки пользователя удалятся каскадно, поэтому сначала уменьшаем счетчики фильмов
+        String decrementSql = "UPDATE films SET likes_count = likes_count - 1 " +
+                "WHERE id IN (SELECT film_id FROM film_likes WHERE user_id = ?)";
         String sql = "DELETE FROM users WHERE id = ?";
-        jdbcTemplate.update(sql, id);
+        // Каскад затрагивает пары пользователя под любыми полосами, поэтому удаление берет их все
+        lockAll();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.update(decrementSql, id);
+                jdbcTemplate.update(sql, id);
+            });
+            // Дружба пользователя удалилась каскадно
+            friendGraph.removeUser(id);
+        } finally {
+            unlockAll();
+        }
+        deletionListeners.forEach(listener -> listener.accept(id));
+    }
+
+    @Override
+    public void addDeletionListener(IntConsumer listener) {
+        deletionListeners.add(listener);
     }
 
     @Override
@@ -85,54 +182,192 @@ public class UserDbStorage implements UserStorage {
         return count != null && count > 0;
     }
 
-    private void loadFriends(User user) {
-        String sql = "SELECT friend_id FROM friendships WHERE user_id = ?";
-        List<Integer> friendIds = jdbcTemplate.query(sql,
-                (rs, rowNum) -> rs.getInt("friend_id"),
-                user.getId());
-        user.setFriends(new HashSet<>(friendIds));
+    @Override
+    public int getTotalUsersCount() {
+        String sql = "SELECT COUNT(*) FROM users";
+        Integer count = jdbcTemplate.queryForObject(sql, Integer.class);
+        return count != null ? count : 0;
+    }
+
+    @Override
+    public long getTotalFriendLinksCount() {
+        String sql = "SELECT COALESCE(SUM(CASE WHEN status = 'CONFIRMED' THEN 2 ELSE 1 END), 0) FROM friendships";
+        Long count = jdbcTemplate.queryForObject(sql, Long.class);
+        return count != null ? count : 0;
+    }
+
+    // Друзья пользователей берутся из графа, а не запросом к friendships
+    private List<User> withFriends(List<User> users) {
+        users.forEach(user -> user.setFriends(friendGraph.getFriendIds(user.getId())));
+        return users;
     }
 
     @Override
-    public void addFriend(int userId, int friendId) {
-        // Проверяем существование пользователей
-        if (!existsById(userId) || !existsById(friendId)) {
-            throw new NotFoundException("Пользователь не найден");
+    public boolean addFriend(int userId, int friendId) {
+        Lock lock = pairLock(userId, friendId);
+        lock.lock();
+        try {
+            // Встречный запрос подтверждает дружбу; иначе создаем запрос. Чтения перед записью не нужно
+            boolean added = confirmRequest(userId, friendId);
+            if (!added) {
+                String insertSql = "INSERT INTO friendships (user_id, friend_id, requester_id, status) " +
+                        "VALUES (?, ?, ?, ?)";
+                try {
+                    jdbcTemplate.update(insertSql, Math.min(userId, friendId), Math.max(userId, friendId),
+                            userId, FriendshipStatus.UNCONFIRMED.name());
+                    added = true;
+                } catch (DuplicateKeyException e) {
+                    // Пара уже есть: наш запрос, подтвержденная дружба или встречный запрос из другого узла
+                    added = confirmRequest(userId, friendId);
+                } catch (DataIntegrityViolationException e) {
+                    throw new NotFoundException("Пользователь не найден");
+                }
+            }
+            friendGraph.add(userId, friendId);
+            return added;
+        } finally {
+            lock.unlock();
         }
+    }
 
-        // Проверяем, нет ли уже такой дружбы
-        String checkSql = "SELECT COUNT(*) FROM friendships WHERE user_id = ? AND friend_id = ?";
-        Integer count = jdbcTemplate.queryForObject(checkSql, Integer.class, userId, friendId);
+    @Override
+    public boolean removeFriend(int userId, int friendId) {
+        Lock lock = pairLock(userId, friendId);
+        lock.lock();
+        try {
+            // Подтвержденная дружба становится запросом от бывшего друга, собственный запрос удаляется
+            String unconfirmSql = "UPDATE friendships SET status = ?, requester_id = ? " +
+                    "WHERE user_id = ? AND friend_id = ? AND status = ?";
+            int updated = jdbcTemplate.update(unconfirmSql, FriendshipStatus.UNCONFIRMED.name(), friendId,
+                    Math.min(userId, friendId), Math.max(userId, friendId), FriendshipStatus.CONFIRMED.name());
+            if (updated == 0) {
+                String deleteSql = "DELETE FROM friendships WHERE user_id = ? AND friend_id = ? AND requester_id = ?";
+                updated = jdbcTemplate.update(deleteSql, Math.min(userId, friendId), Math.max(userId, friendId),
+                        userId);
+            }
+            friendGraph.remove(userId, friendId);
+            return updated > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        if (count == null || count == 0) {
-            // Создаем неподтвержденную дружбу
-            String insertSql = "INSERT INTO friendships (user_id, friend_id, status) VALUES (?, ?, 'UNCONFIRMED')";
-            jdbcTemplate.update(insertSql, userId, friendId);
+    @Override
+    public boolean acceptFriendRequest(int userId, int requesterId) {
+        Lock lock = pairLock(userId, requesterId);
+        lock.lock();
+        try {
+            if (!confirmRequest(userId, requesterId)) {
+                return false;
+            }
+            friendGraph.add(userId, requesterId);
+            return true;
+        } finally {
+            lock.unlock();
         }
     }
 
     @Override
-    public void removeFriend(int userId, int friendId) {
-        String sql = "DELETE FROM friendships WHERE user_id = ? AND friend_id = ?";
-        jdbcTemplate.update(sql, userId, friendId);
+    public boolean declineFriendRequest(int userId, int requesterId) {
+        String sql = "DELETE FROM friendships WHERE user_id = ? AND friend_id = ? AND requester_id = ? AND status = ?";
+        Lock lock = pairLock(userId, requesterId);
+        lock.lock();
+        try {
+            int deleted = jdbcTemplate.update(sql, Math.min(userId, requesterId), Math.max(userId, requesterId),
+                    requesterId, FriendshipStatus.UNCONFIRMED.name());
+            if (deleted == 0) {
+                return false;
+            }
+            friendGraph.remove(requesterId, userId);
+            return true;
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public List<User> getFriends(int userId) {
         String sql = "SELECT u.* FROM users u " +
-                "JOIN friendships f ON u.id = f.friend_id " +
-                "WHERE f.user_id = ?";
-        return jdbcTemplate.query(sql, new UserRowMapper(), userId);
+                "JOIN (" + VISIBLE_FRIEND_IDS_SQL + ") f ON u.id = f.id " +
+                "ORDER BY u.id";
+        return withFriends(jdbcTemplate.query(sql, new UserRowMapper(), userId, userId));
+    }
+
+    @Override
+    public List<User> getFriendRequests(int userId) {
+        String sql = "SELECT u.* FROM users u JOIN (" +
+                "SELECT requester_id AS id FROM friendships " +
+                "WHERE user_id = ? AND status = 'UNCONFIRMED' AND requester_id <> user_id " +
+                "UNION ALL " +
+                "SELECT requester_id AS id FROM friendships " +
+                "WHERE friend_id = ? AND status = 'UNCONFIRMED' AND requester_id <> friend_id" +
+                ") r ON u.id = r.id ORDER BY u.id";
+        return withFriends(jdbcTemplate.query(sql, new UserRowMapper(), userId, userId));
     }
 
     @Override
     public List<User> getCommonFriends(int userId, int otherId) {
-        String sql = "SELECT u.* FROM users u " +
-                "JOIN friendships f1 ON u.id = f1.friend_id AND f1.user_id = ? " +
-                "JOIN friendships f2 ON u.id = f2.friend_id AND f2.user_id = ?";
-        return jdbcTemplate.query(sql, new UserRowMapper(), userId, otherId);
+        // Пересечение берем из графа, из базы — только сами пользователи одним запросом
+        List<Integer> commonIds = new ArrayList<>();
+        friendGraph.getCommonFriends(userId, otherId).forEach((int id) -> commonIds.add(id));
+        return findByIds(commonIds);
     }
 
+    @Override
+    public FriendGraph getFriendGraph() {
+        return friendGraph;
+    }
+
+    // Все изменения пары идут под полосой меньшего ID, как строка пары в таблице friendships
+    private Lock pairLock(int userId, int friendId) {
+        return pairLocks[Math.min(userId, friendId) & (STRIPES - 1)];
+    }
+
+    private void lockAll() {
+        for (Lock lock : pairLocks) {
+            lock.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = pairLocks.length - 1; i >= 0; i--) {
+            pairLocks[i].unlock();
+        }
+    }
+
+    private static Lock[] newLocks() {
+        Lock[] locks = new Lock[STRIPES];
+        Arrays.setAll(locks, i -> new ReentrantLock());
+        return locks;
+    }
+
+    // Подтверждает запрос, который requesterId отправил userId; одна запись по первичному ключу пары
+    private boolean confirmRequest(int userId, int requesterId) {
+        String sql = "UPDATE friendships SET status = ? " +
+                "WHERE user_id = ? AND friend_id = ? AND requester_id = ? AND status = ?";
+        return jdbcTemplate.update(sql, FriendshipStatus.CONFIRMED.name(),
+                Math.min(userId, requesterId), Math.max(userId, requesterId),
+                requesterId, FriendshipStatus.UNCONFIRMED.name()) > 0;
+    }
+
+    // Строка пары дает ребро от отправителя запроса, а подтвержденная — ребра в обе стороны
+    private static void visitEdges(ResultSet rs, EdgeConsumer consumer) throws SQLException {
+        int low = rs.getInt("user_id");
+        int high = rs.getInt("friend_id");
+        int requester = rs.getInt("requester_id");
+        boolean confirmed = FriendshipStatus.CONFIRMED.name().equals(rs.getString("status"));
+        if (confirmed || requester == low) {
+            consumer.accept(low, high);
+        }
+        if (confirmed || requester == high) {
+            consumer.accept(high, low);
+        }
+    }
+
+    @FunctionalInterface
+    private interface EdgeConsumer {
+        void accept(int userId, int friendId);
+    }
 
     private static class UserRowMapper implements RowMapper<User> {
         @Override
@@ -2,8 +2,10 @@ package ru.yandex.practicum.filmorate.storage.user;
 
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.IntConsumer;
 
 public interface UserStorage {
     User create(User user);
@@ -12,17 +14,76 @@ public interface UserStorage {
 
     List<User> findAll();
 
+    /**
+     * Возвращает не более limit пользователей с ID больше afterId в порядке возрастания ID.
+     */
+    List<User> findPage(int afterId, int limit);
+
     Optional<User> findById(int id);
 
+    /**
+     * Возвращает пользователей с указанными ID в порядке перечисления, несуществующие ID пропускаются.
+     */
+    List<User> findByIds(Collection<Integer> ids);
+
     void delete(int id);
 
+    /**
+     * Регистрирует обработчик, который вызывается после удаления пользователя:
+     * так хранилище фильмов убирает его лайки из своих индексов.
+     */
+    void addDeletionListener(IntConsumer listener);
+
     boolean existsById(int id);
 
-    void addFriend(int userId, int friendId);
+    int getTotalUsersCount();
+
+    /**
+     * Возвращает число записей во всех списках друзей: подтвержденная дружба дает две, запрос — одну.
+     */
+    long getTotalFriendLinksCount();
+
+    /**
+     * Отправляет запрос дружбы. Если friendId уже отправил запрос userId, дружба подтверждается.
+     * Неподтвержденная дружба видна в списке друзей только отправителю.
+     *
+     * @return true, если friendId появился в списке друзей userId
+     */
+    boolean addFriend(int userId, int friendId);
 
-    void removeFriend(int userId, int friendId);
+    /**
+     * Удаляет friendId из друзей userId. Подтвержденная дружба становится запросом от friendId,
+     * собственный неподтвержденный запрос отзывается.
+     *
+     * @return true, если friendId был в списке друзей userId
+     */
+    boolean removeFriend(int userId, int friendId);
+
+    /**
+     * Подтверждает запрос дружбы, который requesterId отправил userId.
+     *
+     * @return false, если такого запроса нет
+     */
+    boolean acceptFriendRequest(int userId, int requesterId);
+
+    /**
+     * Отклоняет запрос дружбы, который requesterId отправил userId.
+     *
+     * @return false, если такого запроса нет
+     */
+    boolean declineFriendRequest(int userId, int requesterId);
 
     List<User> getFriends(int userId);
 
+    /**
+     * Возвращает пользователей, чьи запросы дружбы к userId ждут ответа.
+     */
+    List<User> getFriendRequests(int userId);
+
     List<User> getCommonFriends(int userId, int otherId);
-}
\ No newline at end of file
+
+    /**
+     * Возвращает граф дружбы, который хранилище держит актуальным при изменении дружбы. Только для чтения.
+     */
+    FriendGraph getFriendGraph();
+}
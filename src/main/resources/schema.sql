@@ -23,7 +23,8 @@ CREATE TABLE IF NOT EXISTS films (
     description VARCHAR(200),
     release_date DATE,
     duration INTEGER,
-    mpa_rating_id INTEGER REFERENCES mpa_ratings(id)
+    mpa_rating_id INTEGER REFERENCES mpa_ratings(id),
+    likes_count INTEGER DEFAULT 0 NOT NULL
 );
 
 CREATE TABLE IF NOT EXISTS film_genres (
@@ -43,18 +44,29 @@ CREATE TABLE IF NOT EXISTS users (
 CREATE TABLE IF NOT EXISTS film_likes (
     film_id INT NOT NULL,
     user_id INT NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
     PRIMARY KEY (film_id, user_id),
-    FOREIGN KEY (film_id) REFERENCES films(id) ON DELETE CASCADE,
-    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+    CONSTRAINT fk_film_likes_film FOREIGN KEY (film_id) REFERENCES films(id) ON DELETE CASCADE,
+    CONSTRAINT fk_film_likes_user FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
 );
 
+-- Одна строка на пару пользователей: user_id — меньший ID, friend_id — больший.
+-- Неподтвержденная дружба видна только отправителю запроса (requester_id), подтвержденная — обоим
 CREATE TABLE IF NOT EXISTS friendships (
     user_id INTEGER REFERENCES users(id) ON DELETE CASCADE,
     friend_id INTEGER REFERENCES users(id) ON DELETE CASCADE,
-    status VARCHAR(20) DEFAULT 'UNCONFIRMED',
-    PRIMARY KEY (user_id, friend_id)
+    requester_id INTEGER NOT NULL,
+    status VARCHAR(20) DEFAULT 'UNCONFIRMED' NOT NULL,
+    PRIMARY KEY (user_id, friend_id),
+    CONSTRAINT chk_friendships_order CHECK (user_id < friend_id),
+    CONSTRAINT chk_friendships_requester CHECK (requester_id IN (user_id, friend_id))
 );
 
 CREATE INDEX IF NOT EXISTS idx_film_likes_film_id ON film_likes(film_id);
-CREATE INDEX IF NOT EXISTS idx_friendships_user_id ON friendships(user_id);
+CREATE INDEX IF NOT EXISTS idx_film_likes_user_id ON film_likes(user_id);
+CREATE INDEX IF NOT EXISTS idx_film_likes_created_at ON film_likes(created_at);
+CREATE INDEX IF NOT EXISTS idx_films_likes_count ON films(likes_count DESC, id DESC);
+CREATE INDEX IF NOT EXISTS idx_film_genres_genre_id ON film_genres(genre_id, film_id);
+CREATE INDEX IF NOT EXISTS idx_films_mpa_rating_id ON films(mpa_rating_id);
+CREATE INDEX IF NOT EXISTS idx_films_release_date ON films(release_date);
 CREATE INDEX IF NOT EXISTS idx_friendships_friend_id ON friendships(friend_id);
\ No newline at end of file
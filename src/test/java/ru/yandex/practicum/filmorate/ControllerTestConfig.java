@@ -12,8 +12,8 @@ import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 public class ControllerTestConfig {
 
     @Bean
-    public FilmStorage inMemoryFilmStorage() {
-        return new InMemoryFilmStorage();
+    public FilmStorage inMemoryFilmStorage(UserStorage inMemoryUserStorage) {
+        return new InMemoryFilmStorage(inMemoryUserStorage);
     }
 
     @Bean
@@ -0,0 +1,96 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmAutocompleteIndex;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.yandex.practicum.filmorate.TestFixtures.createFilm;
+import static ru.yandex.practicum.filmorate.TestFixtures.createUser;
+
+class FilmAutocompleteIndexTest {
+    private InMemoryUserStorage userStorage;
+    private InMemoryFilmStorage filmStorage;
+    private FilmAutocompleteIndex autocompleteIndex;
+
+    @BeforeEach
+    void setUp() {
+        userStorage = new InMemoryUserStorage();
+        filmStorage = new InMemoryFilmStorage(userStorage);
+        autocompleteIndex = new FilmAutocompleteIndex(filmStorage);
+    }
+
+    @Test
+    void shouldCompleteByNormalizedPrefixOrderedByLikes() {
+        Film matrix = createFilm(filmStorage, "The Matrix");
+        Film reloaded = createFilm(filmStorage, "The Matrix: Reloaded");
+        Film mask = createFilm(filmStorage, "The Mask");
+        Film other = createFilm(filmStorage, "Alien");
+        int user = createUser(userStorage);
+        filmStorage.addLike(reloaded.getId(), user);
+        autocompleteIndex.rebuild();
+
+        assertThat(autocompleteIndex.complete("the ma", 10))
+                .containsExactly(reloaded.getId(), mask.getId(), matrix.getId());
+        assertThat(autocompleteIndex.complete("THE  MATRIX", 10))
+                .containsExactly(reloaded.getId(), matrix.getId());
+        assertThat(autocompleteIndex.complete("the", 1)).containsExactly(reloaded.getId());
+        assertThat(autocompleteIndex.complete("al", 10)).containsExactly(other.getId());
+        assertThat(autocompleteIndex.complete("zz", 10)).isEmpty();
+    }
+
+    @Test
+    void shouldFollowLikesRenamesAndDeletes() {
+        Film first = createFilm(filmStorage, "Ёлки");
+        Film second = createFilm(filmStorage, "Елки 2");
+        autocompleteIndex.rebuild();
+        assertThat(autocompleteIndex.complete("елк", 10)).containsExactly(second.getId(), first.getId());
+
+        int user = createUser(userStorage);
+        filmStorage.addLike(first.getId(), user);
+        autocompleteIndex.markLikesChanged(first.getId());
+        // До пересчета порядок прежний, пересчет читает лайки из хранилища
+        assertThat(autocompleteIndex.complete("елк", 10)).containsExactly(second.getId(), first.getId());
+        autocompleteIndex.refreshLiked();
+        assertThat(autocompleteIndex.complete("елк", 10)).containsExactly(first.getId(), second.getId());
+
+        // Лайк, снятый мимо индекса, не оставляет в нем устаревшего счетчика
+        filmStorage.removeLike(first.getId(), user);
+        filmStorage.addLike(second.getId(), user);
+        autocompleteIndex.markLikesChanged(second.getId());
+        autocompleteIndex.refreshLiked();
+        assertThat(autocompleteIndex.complete("елк", 10)).containsExactly(second.getId(), first.getId());
+
+        second.setName("Другое название");
+        autocompleteIndex.index(second);
+        assertThat(autocompleteIndex.complete("елк", 10)).containsExactly(first.getId());
+        assertThat(autocompleteIndex.complete("друг", 10)).containsExactly(second.getId());
+
+        autocompleteIndex.remove(first.getId());
+        assertThat(autocompleteIndex.complete("е", 10)).isEmpty();
+    }
+
+    @Test
+    void shouldKeepOnlyTopSuggestionsPerNode() {
+        for (int i = 0; i < FilmAutocompleteIndex.MAX_SUGGESTIONS + 5; i++) {
+            autocompleteIndex.index(createFilm(filmStorage, "Sequel " + i));
+        }
+        assertThat(autocompleteIndex.complete("seq", 100)).hasSize(FilmAutocompleteIndex.MAX_SUGGESTIONS);
+    }
+
+    @Test
+    void shouldRebuildAcrossStoragePagesWithBulkLikes() {
+        Film last = null;
+        for (int i = 0; i < 1005; i++) {
+            last = createFilm(filmStorage, "Catalog " + i);
+        }
+        filmStorage.addLike(last.getId(), createUser(userStorage));
+        autocompleteIndex.rebuild();
+
+        assertThat(autocompleteIndex.complete("catalog 1004", 10)).containsExactly(last.getId());
+        assertThat(autocompleteIndex.complete("catalog", 1)).containsExactly(last.getId());
+    }
+}
@@ -8,12 +8,18 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.MpaRating;
 
 import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
 
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -113,4 +119,151 @@ class FilmControllerIntegrationTest {
         mockMvc.perform(get("/films"))
                 .andExpect(status().isOk());
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldPaginateFilmsByCursor() throws Exception {
+        int firstId = createFilm("Page Film 1");
+        int secondId = createFilm("Page Film 2");
+        int thirdId = createFilm("Page Film 3");
+
+        mockMvc.perform(get("/films").param("after", String.valueOf(firstId - 1)).param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].id").value(firstId))
+                .andExpect(jsonPath("$[1].id").value(secondId))
+                .andExpect(header().string("X-Next-Cursor", String.valueOf(secondId)));
+
+        mockMvc.perform(get("/films").param("after", String.valueOf(secondId)).param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].id").value(thirdId))
+                .andExpect(header().doesNotExist("X-Next-Cursor"));
+    }
+
+    @Test
+    void shouldReturnAllFilmsWithoutPagingParams() throws Exception {
+        int firstId = createFilm("Full List Film 1");
+        int secondId = createFilm("Full List Film 2");
+
+        mockMvc.perform(get("/films"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[?(@.id == %d)]", firstId).exists())
+                .andExpect(jsonPath("$[?(@.id == %d)]", secondId).exists())
+                .andExpect(header().doesNotExist("X-Next-Cursor"));
+
+        mockMvc.perform(get("/films").param("after", String.valueOf(firstId)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(secondId));
+    }
+
+    @Test
+    void shouldRejectInvalidPageSize() throws Exception {
+        mockMvc.perform(get("/films").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/films").param("limit", "1001"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/films").param("after", "-1").param("limit", "10"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldValidatePopularFilmsFilter() throws Exception {
+        mockMvc.perform(get("/films/popular").param("genreId", "1").param("mpaId", "1").param("year", "2000"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/films/popular").param("genreId", "999"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/films/popular").param("year", "1800"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldSearchAndCompleteFilmsAndForgetDeletedOnes() throws Exception {
+        int id = createFilm("Quixotic Zeppelin");
+
+        mockMvc.perform(get("/films/search").param("q", "zeppelin QUIXOTIC"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].id").value(id));
+
+        mockMvc.perform(get("/films/autocomplete").param("prefix", "quixotic ZEP"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].id").value(id));
+
+        mockMvc.perform(delete("/films/" + id))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/films/search").param("q", "zeppelin"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0));
+        mockMvc.perform(get("/films/autocomplete").param("prefix", "quixotic"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0));
+        mockMvc.perform(get("/films/search").param("q", " "))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldCreateFilmsInBatch() throws Exception {
+        Film first = Film.builder()
+                .name("Batch Film 1")
+                .description("Test Description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100)
+                .mpa(new MpaRating(2, null, null))
+                .genres(Set.of(new Genre(2, null), new Genre(1, null)))
+                .build();
+        Film second = Film.builder()
+                .name("Batch Film 2")
+                .releaseDate(LocalDate.of(2001, 1, 1))
+                .duration(110)
+                .build();
+
+        mockMvc.perform(post("/films/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(first, second))))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].mpa.name").value("PG"))
+                .andExpect(jsonPath("$[0].genres[0].id").value(1))
+                .andExpect(jsonPath("$[0].genres[1].id").value(2))
+                .andExpect(jsonPath("$[0].genres[1].name").isNotEmpty())
+                .andExpect(jsonPath("$[1].id").isNumber());
+    }
+
+    @Test
+    void shouldRejectWholeBatchWithInvalidFilm() throws Exception {
+        Film valid = Film.builder()
+                .name("Batch Valid")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100)
+                .build();
+        Film invalid = Film.builder()
+                .name("Batch Invalid")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100)
+                .genres(Set.of(new Genre(999, null)))
+                .build();
+
+        mockMvc.perform(post("/films/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(valid, invalid))))
+                .andExpect(status().isNotFound());
+    }
+
+    private int createFilm(String name) throws Exception {
+        Film film = Film.builder()
+                .name(name)
+                .description("Test Description")
+                .releaseDate(LocalDate.of(1999, 12, 28))
+                .duration(120)
+                .mpa(new MpaRating(1, "G", "Нет возрастных ограничений"))
+                .build();
+
+        String response = mockMvc.perform(post("/films")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(film)))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readValue(response, Film.class).getId();
+    }
+}
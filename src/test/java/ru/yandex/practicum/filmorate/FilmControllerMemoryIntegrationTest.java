@@ -0,0 +1,97 @@
+package ru.yandex.practicum.filmorate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.LocalDate;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// В режиме памяти кэширующей обертки нет: число лайков в ответе заполняет само хранилище
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {"filmorate.storage.type=memory"})
+class FilmControllerMemoryIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void shouldReturnLikesCountInMemoryMode() throws Exception {
+        int filmId = createFilm("memory_rate");
+        int userId = createUser("memory_rate_user");
+
+        mockMvc.perform(get("/films/{id}", filmId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rate").value(0));
+
+        mockMvc.perform(put("/films/{id}/like/{userId}", filmId, userId))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/films/{id}", filmId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rate").value(1));
+        mockMvc.perform(get("/films"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[?(@.id == %d)].rate", filmId).value(1));
+        mockMvc.perform(get("/films/popular").param("count", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(filmId))
+                .andExpect(jsonPath("$[0].rate").value(1));
+
+        mockMvc.perform(delete("/films/{id}/like/{userId}", filmId, userId))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/films/{id}", filmId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rate").value(0));
+    }
+
+    private int createFilm(String name) throws Exception {
+        Film film = Film.builder()
+                .name(name)
+                .description("Test Description")
+                .releaseDate(LocalDate.of(1999, 12, 28))
+                .duration(120)
+                .mpa(new MpaRating(1, "G", "Нет возрастных ограничений"))
+                .build();
+
+        String response = mockMvc.perform(post("/films")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(film)))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readValue(response, Film.class).getId();
+    }
+
+    private int createUser(String login) throws Exception {
+        User user = User.builder()
+                .email(login + "@test.com")
+                .login(login)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+        String response = mockMvc.perform(post("/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(user)))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readValue(response, User.class).getId();
+    }
+}
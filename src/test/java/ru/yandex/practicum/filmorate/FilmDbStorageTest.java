@@ -4,15 +4,33 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.storage.film.CachingFilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.film.GenreMpaStorage;
+import ru.yandex.practicum.filmorate.storage.film.TrendingWindow;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
 class FilmDbStorageTest {
@@ -20,12 +38,21 @@ class FilmDbStorageTest {
     @Autowired
     private FilmStorage filmStorage;
 
+    @Autowired
+    private FilmDbStorage filmDbStorage;
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
     @Autowired
     private GenreMpaStorage genreMpaStorage;
 
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private UserStorage userStorage;
+
     private Film testFilm;
 
     @BeforeEach
@@ -34,6 +61,11 @@ class FilmDbStorageTest {
         jdbcTemplate.update("DELETE FROM film_genres");
         jdbcTemplate.update("DELETE FROM film_likes");
         jdbcTemplate.update("DELETE FROM films");
+        jdbcTemplate.update("DELETE FROM friendships");
+        jdbcTemplate.update("DELETE FROM users");
+        filmDbStorage.loadLikeIndexes();
+        // Сбрасывает кэш фильмов, измененных в обход хранилища
+        filmStorage.reconcileLikesCount();
 
         testFilm = Film.builder()
                 .name("Test Film")
@@ -59,4 +91,330 @@ class FilmDbStorageTest {
         assertThat(foundFilm.get().getMpa().getId()).isEqualTo(1);
         assertThat(foundFilm.get().getMpa().getName()).isEqualTo("G");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGenresLoadedWithFilm() {
+        testFilm.setGenres(Set.of(new Genre(2, "Драма"), new Genre(1, "Комедия")));
+        Film createdFilm = filmStorage.create(testFilm);
+        assertThat(createdFilm.getGenres()).extracting(Genre::getId).containsExactly(1, 2);
+        assertThat(createdFilm.getGenres()).extracting(Genre::getName).containsExactly(
+                genreMpaStorage.getGenreById(1).getName(), genreMpaStorage.getGenreById(2).getName());
+
+        createdFilm.setGenres(Set.of(new Genre(3, "Мультфильм")));
+        Film updatedFilm = filmStorage.update(createdFilm);
+        assertThat(updatedFilm.getGenres()).extracting(Genre::getId).containsExactly(3);
+
+        updatedFilm.setGenres(Set.of());
+        assertThat(filmStorage.update(updatedFilm).getGenres()).isEmpty();
+    }
+
+    @Test
+    void testFilmsShareReferenceDataInstances() {
+        testFilm.setGenres(Set.of(new Genre(2, null)));
+        Film first = filmStorage.create(testFilm);
+        Film second = filmStorage.create(testFilm.toBuilder().id(null).build());
+
+        assertThat(first.getGenres().iterator().next()).isSameAs(genreMpaStorage.getGenreById(2));
+        assertThat(second.getGenres().iterator().next()).isSameAs(genreMpaStorage.getGenreById(2));
+        assertThat(second.getMpa()).isSameAs(genreMpaStorage.getMpaRatingById(1));
+
+        genreMpaStorage.refresh();
+        assertThat(genreMpaStorage.getAllGenres()).extracting(Genre::getId).containsExactly(1, 2, 3, 4, 5, 6);
+        assertThatThrownBy(() -> genreMpaStorage.getGenreById(100)).isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void testGenreMissingFromStaleRegistryIsKept() {
+        Film createdFilm = filmStorage.create(testFilm);
+        // Жанр добавлен в таблицу в обход справочника, загруженного при старте
+        jdbcTemplate.update("INSERT INTO genres (id, name) VALUES (100, 'Stale')");
+        try {
+            jdbcTemplate.update("INSERT INTO film_genres (film_id, genre_id) VALUES (?, 100)", createdFilm.getId());
+            Film reloaded = filmStorage.findByIds(List.of(createdFilm.getId())).get(0);
+            assertThat(reloaded.getGenres()).containsExactly(new Genre(100, null));
+        } finally {
+            jdbcTemplate.update("DELETE FROM film_genres WHERE genre_id = 100");
+            jdbcTemplate.update("DELETE FROM genres WHERE id = 100");
+        }
+    }
+
+    @Test
+    void testLikesCountMaintainedAndReconciled() {
+        Film createdFilm = filmStorage.create(testFilm);
+        int firstUserId = createUser("first@test.com");
+        int secondUserId = createUser("second@test.com");
+
+        filmStorage.addLike(createdFilm.getId(), firstUserId);
+        filmStorage.addLike(createdFilm.getId(), firstUserId);
+        filmStorage.addLike(createdFilm.getId(), secondUserId);
+        assertThat(filmStorage.findById(createdFilm.getId()).get().getRate()).isEqualTo(2);
+
+        filmStorage.removeLike(createdFilm.getId(), secondUserId);
+        assertThat(filmStorage.findById(createdFilm.getId()).get().getRate()).isEqualTo(1);
+
+        // Имитируем расхождение счетчика с таблицей лайков
+        jdbcTemplate.update("UPDATE films SET likes_count = 5 WHERE id = ?", createdFilm.getId());
+        assertThat(filmStorage.reconcileLikesCount()).isEqualTo(1);
+        assertThat(filmStorage.findById(createdFilm.getId()).get().getRate()).isEqualTo(1);
+        assertThat(filmStorage.reconcileLikesCount()).isZero();
+    }
+
+    @Test
+    void testDeletedUserLikesLeaveIndexes() {
+        Film first = filmStorage.create(testFilm);
+        Film second = filmStorage.create(testFilm.toBuilder().id(null).name("Second Film").build());
+        int stayingUserId = createUser("staying@test.com");
+        int deletedUserId = createUser("deleted@test.com");
+
+        filmStorage.addLike(first.getId(), stayingUserId);
+        filmStorage.addLike(second.getId(), deletedUserId);
+        filmStorage.addLike(second.getId(), stayingUserId);
+        assertThat(filmStorage.getPopularFilms(1)).extracting(Film::getId).containsExactly(second.getId());
+
+        userStorage.delete(deletedUserId);
+        assertThat(filmStorage.getLikesCount(second.getId())).isEqualTo(1);
+        assertThat(filmStorage.getLikeGraph().getFilms(deletedUserId).isEmpty()).isTrue();
+        assertThat(filmStorage.getTrendingFilms(TrendingWindow.DAY, 1)).extracting(Film::getId)
+                .containsExactly(second.getId());
+        assertThat(filmStorage.getPopularFilms(1)).extracting(Film::getId).containsExactly(second.getId());
+
+        // После перезагрузки индексы совпадают с поддерживаемыми при записи
+        filmStorage.removeLike(second.getId(), stayingUserId);
+        filmDbStorage.loadLikeIndexes();
+        assertThat(filmStorage.getLikesCount(second.getId())).isZero();
+        assertThat(filmStorage.getPopularFilms(1)).extracting(Film::getId).containsExactly(first.getId());
+    }
+
+    @Test
+    void testReloadNeverExposesEmptyLikeGraph() throws Exception {
+        Film createdFilm = filmStorage.create(testFilm);
+        filmStorage.addLike(createdFilm.getId(), createUser("reload@test.com"));
+
+        // Перезагрузка строит новый граф в стороне, читатель все время видит лайк
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            CompletableFuture<Void> reloads = CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 20; i++) {
+                    filmDbStorage.loadLikeIndexes();
+                }
+            });
+            CompletableFuture<Integer> minLikers = CompletableFuture.supplyAsync(() -> {
+                int min = Integer.MAX_VALUE;
+                do {
+                    min = Math.min(min, filmStorage.getLikeGraph().countLikers(createdFilm.getId()));
+                } while (!reloads.isDone());
+                return min;
+            }, reader);
+            reloads.get();
+            assertThat(minLikers.get()).isEqualTo(1);
+        } finally {
+            reader.shutdown();
+        }
+    }
+
+    @Test
+    void testReloadMarksOnlyFilmsWhoseLikesDiffer() {
+        // Отдельный экземпляр: отметки общего хранилища может снять плановый пересчет похожих фильмов
+        FilmDbStorage storage = new FilmDbStorage(jdbcTemplate, transactionTemplate, genreMpaStorage);
+        Film first = storage.create(testFilm);
+        Film second = storage.create(testFilm.toBuilder().id(null).name("Second Film").build());
+        int userId = createUser("changes@test.com");
+        storage.addLike(first.getId(), userId);
+        storage.addLike(second.getId(), userId);
+        storage.loadLikeIndexes();
+        assertThat(storage.getLikeGraph().drainChangedFilms()).containsExactlyInAnyOrder(
+                first.getId(), second.getId());
+
+        storage.loadLikeIndexes();
+        assertThat(storage.getLikeGraph().drainChangedFilms()).isEmpty();
+
+        // Лайк, удаленный в обход хранилища, отмечается при следующей перезагрузке
+        jdbcTemplate.update("DELETE FROM film_likes WHERE film_id = ?", second.getId());
+        storage.loadLikeIndexes();
+        assertThat(storage.getLikeGraph().drainChangedFilms()).containsExactly(second.getId());
+    }
+
+    @Test
+    void testPopularFilmsOrderedByLikesThenId() {
+        Film first = filmStorage.create(testFilm);
+        Film second = filmStorage.create(Film.builder()
+                .name("Second Film")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(90)
+                .build());
+        Film third = filmStorage.create(Film.builder()
+                .name("Third Film")
+                .releaseDate(LocalDate.of(2001, 1, 1))
+                .duration(100)
+                .build());
+        int userId = createUser("popular@test.com");
+
+        filmStorage.addLike(first.getId(), userId);
+
+        assertThat(filmStorage.getPopularFilms(10)).extracting(Film::getId)
+                .containsExactly(first.getId(), third.getId(), second.getId());
+        assertThat(filmStorage.getPopularFilms(1)).extracting(Film::getId)
+                .containsExactly(first.getId());
+
+        filmStorage.removeLike(first.getId(), userId);
+        filmStorage.delete(third.getId());
+        assertThat(filmStorage.getPopularFilms(10)).extracting(Film::getId)
+                .containsExactly(second.getId(), first.getId());
+    }
+
+    @Test
+    void testPopularFilmsFilteredByGenreMpaAndYear() {
+        TestFixtures.assertFilteredPopularFilms(filmStorage, genreMpaStorage, createUser("filter@test.com"));
+    }
+
+    @Test
+    void testTrendingFilmsCountOnlyLikesInsideWindow() {
+        Film recent = filmStorage.create(testFilm);
+        Film hot = filmStorage.create(testFilm.toBuilder().id(null).name("Hot").build());
+        Film old = filmStorage.create(testFilm.toBuilder().id(null).name("Old").build());
+        Film ancient = filmStorage.create(testFilm.toBuilder().id(null).name("Ancient").build());
+        int firstUser = createUser("trend1@test.com");
+        int secondUser = createUser("trend2@test.com");
+
+        insertLike(old.getId(), firstUser, Instant.now().minus(Duration.ofDays(3)));
+        insertLike(old.getId(), secondUser, Instant.now().minus(Duration.ofDays(3)));
+        insertLike(ancient.getId(), firstUser, Instant.now().minus(Duration.ofDays(30)));
+        // Лайки вставлены в обход счетчиков: сверка находит расхождение и восстанавливает
+        // индекс трендов из лайков с отметками времени
+        assertThat(filmStorage.reconcileLikesCount()).isEqualTo(2);
+
+        filmStorage.addLike(recent.getId(), firstUser);
+        filmStorage.addLike(hot.getId(), firstUser);
+        filmStorage.addLike(hot.getId(), secondUser);
+
+        assertThat(filmStorage.getTrendingFilms(TrendingWindow.DAY, 10)).extracting(Film::getId)
+                .containsExactly(hot.getId(), recent.getId());
+        assertThat(filmStorage.getTrendingFilms(TrendingWindow.WEEK, 10)).extracting(Film::getId)
+                .containsExactly(old.getId(), hot.getId(), recent.getId());
+
+        filmStorage.removeLike(hot.getId(), firstUser);
+        filmStorage.removeLike(hot.getId(), secondUser);
+        filmStorage.removeLike(old.getId(), firstUser);
+        assertThat(filmStorage.getTrendingFilms(TrendingWindow.DAY, 10)).extracting(Film::getId)
+                .containsExactly(recent.getId());
+        assertThat(filmStorage.getTrendingFilms(TrendingWindow.WEEK, 1)).extracting(Film::getId)
+                .containsExactly(old.getId());
+        assertThat(filmStorage.getPopularFilms(1)).extracting(Film::getId).containsExactly(ancient.getId());
+    }
+
+    @Test
+    void testLikeWritesAreIdempotentAndValidateReferences() {
+        Film createdFilm = filmStorage.create(testFilm);
+        int userId = createUser("likes@test.com");
+
+        assertThat(filmStorage.addLike(createdFilm.getId(), userId)).isTrue();
+        assertThat(filmStorage.addLike(createdFilm.getId(), userId)).isFalse();
+        assertThat(filmStorage.removeLike(createdFilm.getId(), userId)).isTrue();
+        assertThat(filmStorage.removeLike(createdFilm.getId(), userId)).isFalse();
+
+        assertThatThrownBy(() -> filmStorage.addLike(createdFilm.getId(), userId + 1000))
+                .isInstanceOf(NotFoundException.class)
+                .hasMessageContaining("Пользователь");
+        assertThatThrownBy(() -> filmStorage.addLike(createdFilm.getId() + 1000, userId))
+                .isInstanceOf(NotFoundException.class)
+                .hasMessageContaining("Фильм");
+        assertThatThrownBy(() -> filmStorage.removeLike(createdFilm.getId(), userId + 1000))
+                .isInstanceOf(NotFoundException.class)
+                .hasMessageContaining("Пользователь");
+        assertThat(filmStorage.findById(createdFilm.getId()).get().getRate()).isZero();
+    }
+
+    @Test
+    void testBatchedLikesCommitInGroups() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        FilmDbStorage batchingStorage = new FilmDbStorage(jdbcTemplate, transactionTemplate, genreMpaStorage);
+        batchingStorage.loadLikeIndexes();
+        int batchSize = 16;
+        Duration maxWait = Duration.ofMillis(20);
+        batchingStorage.enableLikeBatching(batchSize, maxWait, Duration.ofSeconds(10), meterRegistry);
+
+        Film createdFilm = batchingStorage.create(testFilm);
+        List<Integer> userIds = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            userIds.add(createUser("batch" + i + "@test.com"));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        long started = System.nanoTime();
+        long elapsed;
+        try {
+            List<CompletableFuture<Boolean>> likes = new ArrayList<>();
+            for (int userId : userIds) {
+                likes.add(CompletableFuture.supplyAsync(
+                        () -> batchingStorage.addLike(createdFilm.getId(), userId), executor));
+            }
+            CompletableFuture<Boolean> missingUser = CompletableFuture.supplyAsync(
+                    () -> batchingStorage.addLike(createdFilm.getId(), -1), executor);
+
+            for (CompletableFuture<Boolean> like : likes) {
+                assertThat(like.get()).isTrue();
+            }
+            assertThatThrownBy(missingUser::get).hasCauseInstanceOf(NotFoundException.class);
+            elapsed = System.nanoTime() - started;
+        } finally {
+            executor.shutdown();
+            batchingStorage.shutdown();
+        }
+
+        assertThat(batchingStorage.findById(createdFilm.getId()).get().getRate()).isEqualTo(32);
+        assertThat(batchingStorage.getPopularFilms(1).get(0).getId()).isEqualTo(createdFilm.getId());
+        // Неполная пачка закрывается только по истечении maxWait, а пачки пишутся одна за другой,
+        // поэтому неполных пачек не больше, чем интервалов maxWait за время теста (плюс последняя)
+        int operations = userIds.size() + 1;
+        long fullBatches = (operations + batchSize - 1) / batchSize;
+        long partialBatches = elapsed / maxWait.toNanos() + 1;
+        long batches = meterRegistry.get("filmorate.likes.batch.size").summary().count();
+        assertThat(batches).isBetween(fullBatches, fullBatches + partialBatches);
+        assertThat(meterRegistry.get("filmorate.likes.batch.size").summary().totalAmount())
+                .isEqualTo(operations);
+        assertThatThrownBy(() -> batchingStorage.addLike(createdFilm.getId(), userIds.get(0)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void testCachedFilmSeesUpdatesAndLikes() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CachingFilmStorage cachingStorage = new CachingFilmStorage(filmStorage, 100, Duration.ofMinutes(1),
+                meterRegistry);
+
+        Film createdFilm = cachingStorage.create(testFilm);
+        int userId = createUser("cache@test.com");
+
+        Film firstRead = cachingStorage.findById(createdFilm.getId()).orElseThrow();
+        firstRead.setName("Changed by caller");
+        assertThat(cachingStorage.findById(createdFilm.getId()).get().getName()).isEqualTo("Test Film");
+        assertThat(meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count())
+                .isEqualTo(1);
+
+        // Лайк не сбрасывает запись, но счетчик виден сразу
+        cachingStorage.addLike(createdFilm.getId(), userId);
+        assertThat(cachingStorage.findById(createdFilm.getId()).get().getRate()).isEqualTo(1);
+        assertThat(cachingStorage.getPopularFilms(1).get(0).getRate()).isEqualTo(1);
+
+        createdFilm.setName("Updated Film");
+        cachingStorage.update(createdFilm);
+        assertThat(cachingStorage.findById(createdFilm.getId()).get().getName()).isEqualTo("Updated Film");
+        assertThat(cachingStorage.findByIds(List.of(createdFilm.getId())).get(0).getName())
+                .isEqualTo("Updated Film");
+
+        cachingStorage.delete(createdFilm.getId());
+        assertThat(cachingStorage.findById(createdFilm.getId())).isEmpty();
+        assertThat(cachingStorage.existsById(createdFilm.getId())).isFalse();
+    }
+
+    private void insertLike(int filmId, int userId, Instant likedAt) {
+        jdbcTemplate.update("INSERT INTO film_likes (film_id, user_id, created_at) VALUES (?, ?, ?)",
+                filmId, userId, Timestamp.from(likedAt));
+    }
+
+    private int createUser(String email) {
+        jdbcTemplate.update("INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, ?)",
+                email, "login", "name", LocalDate.of(1990, 1, 1));
+        return jdbcTemplate.queryForObject("SELECT id FROM users WHERE email = ?", Integer.class, email);
+    }
+}
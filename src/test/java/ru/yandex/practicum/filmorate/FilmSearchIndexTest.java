@@ -0,0 +1,90 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.service.FilmTextNormalizer;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.yandex.practicum.filmorate.TestFixtures.createFilm;
+import static ru.yandex.practicum.filmorate.TestFixtures.createUser;
+
+class FilmSearchIndexTest {
+    private InMemoryUserStorage userStorage;
+    private InMemoryFilmStorage filmStorage;
+    private FilmSearchIndex searchIndex;
+
+    @BeforeEach
+    void setUp() {
+        userStorage = new InMemoryUserStorage();
+        filmStorage = new InMemoryFilmStorage(userStorage);
+        searchIndex = new FilmSearchIndex(filmStorage);
+    }
+
+    @Test
+    void shouldNormalizeCaseYoAndEndings() {
+        Film hedgehog = createFilm(filmStorage, "Ёжик в тумане", "Мультфильм о ёжике");
+        searchIndex.rebuild();
+
+        assertThat(searchIndex.search("ЕЖИК", 10)).containsExactly(hedgehog.getId());
+        assertThat(searchIndex.search("туман", 10)).containsExactly(hedgehog.getId());
+        assertThat(searchIndex.search("тумане!", 10)).containsExactly(hedgehog.getId());
+        assertThat(searchIndex.search("ёжиков", 10)).containsExactly(hedgehog.getId());
+        assertThat(searchIndex.search("мультфильмы", 10)).containsExactly(hedgehog.getId());
+        assertThat(searchIndex.search("тума", 10)).isEmpty();
+    }
+
+    @Test
+    void shouldStemOnlyRussianWordsWithLongEnoughStem() {
+        assertThat(FilmTextNormalizer.stem("тумане")).isEqualTo("туман");
+        assertThat(FilmTextNormalizer.stem("фильмов")).isEqualTo("фильм");
+        assertThat(FilmTextNormalizer.stem("красная")).isEqualTo("красн");
+        assertThat(FilmTextNormalizer.stem("лес")).isEqualTo("лес");
+        assertThat(FilmTextNormalizer.stem("space")).isEqualTo("space");
+        assertThat(FilmTextNormalizer.stem("2001")).isEqualTo("2001");
+    }
+
+    @Test
+    void shouldRebuildAcrossStoragePages() {
+        for (int i = 0; i < 1500; i++) {
+            createFilm(filmStorage, "Catalog film " + i, null);
+        }
+        searchIndex.rebuild();
+
+        assertThat(searchIndex.search("catalog", 2000)).hasSize(1500);
+        assertThat(searchIndex.search("1499", 10)).hasSize(1);
+    }
+
+    @Test
+    void shouldRankByMatchedTermsThenWeightThenLikes() {
+        Film inName = createFilm(filmStorage, "Space Odyssey", "A journey");
+        Film inDescription = createFilm(filmStorage, "Odyssey", "Lost in space");
+        Film mixed = createFilm(filmStorage, "Space", "An odyssey across space");
+        Film popular = createFilm(filmStorage, "Odyssey", "Lost in space again");
+        searchIndex.rebuild();
+        filmStorage.addLike(popular.getId(), createUser(userStorage));
+
+        // Совпадение в названии весит больше, чем в описании; при равном весе выше фильм с лайками
+        assertThat(searchIndex.search("space odyssey", 10))
+                .containsExactly(inName.getId(), mixed.getId(), popular.getId(), inDescription.getId());
+        assertThat(searchIndex.search("journey odyssey", 10)).first().isEqualTo(inName.getId());
+        assertThat(searchIndex.search("space odyssey", 1)).containsExactly(inName.getId());
+    }
+
+    @Test
+    void shouldUpdateIndexIncrementally() {
+        Film film = createFilm(filmStorage, "Old title", null);
+        searchIndex.index(film);
+
+        film.setName("New title");
+        searchIndex.index(film);
+        assertThat(searchIndex.search("old", 10)).isEmpty();
+        assertThat(searchIndex.search("new", 10)).containsExactly(film.getId());
+
+        searchIndex.remove(film.getId());
+        assertThat(searchIndex.search("title", 10)).isEmpty();
+    }
+}
@@ -0,0 +1,112 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FriendSuggestionService;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static ru.yandex.practicum.filmorate.TestFixtures.createUser;
+
+class FriendSuggestionServiceTest {
+    private InMemoryUserStorage userStorage;
+    private FriendSuggestionService suggestionService;
+
+    @BeforeEach
+    void setUp() {
+        userStorage = new InMemoryUserStorage();
+        suggestionService = new FriendSuggestionService(userStorage);
+    }
+
+    @Test
+    void shouldRankFriendsOfFriendsByMutualFriends() {
+        int target = createUser(userStorage);
+        int first = createUser(userStorage);
+        int second = createUser(userStorage);
+        int close = createUser(userStorage);
+        int distant = createUser(userStorage);
+        int farther = createUser(userStorage);
+
+        friends(target, first, second);
+        friends(first, target, close, distant, second);
+        friends(second, close);
+        friends(distant, farther);
+
+        // Уже добавленный друг и сам пользователь не предлагаются, третий шаг не обходится
+        assertThat(suggestionService.getSuggestions(target, 10)).extracting(User::getId)
+                .containsExactly(close, distant);
+        assertThat(suggestionService.getSuggestions(target, 1)).extracting(User::getId)
+                .containsExactly(close);
+
+        userStorage.removeFriend(second, close);
+        assertThat(suggestionService.getSuggestions(target, 10)).extracting(User::getId)
+                .containsExactly(close, distant);
+        userStorage.delete(close);
+        assertThat(suggestionService.getSuggestions(target, 10)).extracting(User::getId)
+                .containsExactly(distant);
+    }
+
+    @Test
+    void shouldCountManyCandidates() {
+        int target = createUser(userStorage);
+        int hub = createUser(userStorage);
+        int other = createUser(userStorage);
+        friends(target, hub, other);
+        int[] candidates = new int[500];
+        for (int i = 0; i < candidates.length; i++) {
+            candidates[i] = createUser(userStorage);
+            friends(hub, candidates[i]);
+        }
+        friends(other, candidates[250]);
+
+        assertThat(suggestionService.getSuggestions(target, 3)).extracting(User::getId)
+                .containsExactly(candidates[250], candidates[0], candidates[1]);
+    }
+
+    @Test
+    void shouldSampleFanOutInsteadOfTakingLowestIds() {
+        int hub = createUser(userStorage);
+        RoaringBitmap friends = new RoaringBitmap();
+        for (int i = 0; i < 3_000; i++) {
+            int friend = createUser(userStorage);
+            userStorage.addFriend(hub, friend);
+            friends.add(friend);
+        }
+
+        RoaringBitmap sampled = new RoaringBitmap();
+        userStorage.getFriendGraph().forEachFriend(hub, 1_000, new Random(42), sampled::add);
+
+        // Выборка без повторов и только из друзей, но не сводится к первой тысяче по ID
+        assertThat(sampled.getCardinality()).isEqualTo(1_000);
+        assertThat(RoaringBitmap.andNot(sampled, friends).isEmpty()).isTrue();
+        assertThat(sampled.last()).isGreaterThan(friends.select(1_000));
+        assertThat(sampled.rangeCardinality(friends.select(2_000), friends.last() + 1L)).isGreaterThan(200);
+
+        RoaringBitmap all = new RoaringBitmap();
+        userStorage.getFriendGraph().forEachFriend(hub, 5_000, new Random(42), all::add);
+        assertThat(all).isEqualTo(friends);
+    }
+
+    @Test
+    void shouldValidateRequest() {
+        int target = createUser(userStorage);
+        assertThatThrownBy(() -> suggestionService.getSuggestions(target, 0))
+                .isInstanceOf(ValidationException.class);
+        assertThatThrownBy(() -> suggestionService.getSuggestions(999, 10))
+                .isInstanceOf(NotFoundException.class);
+        assertThat(suggestionService.getSuggestions(target, 10)).isEmpty();
+    }
+
+    private void friends(int userId, int... friendIds) {
+        for (int friendId : friendIds) {
+            userStorage.addFriend(userId, friendId);
+        }
+    }
+}
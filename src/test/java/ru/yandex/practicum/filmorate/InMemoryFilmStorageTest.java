@@ -0,0 +1,159 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryGenreMpaStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.yandex.practicum.filmorate.TestFixtures.createFilm;
+import static ru.yandex.practicum.filmorate.TestFixtures.createUser;
+
+class InMemoryFilmStorageTest {
+    private static final int THREADS = 64;
+    private static final int USERS_PER_THREAD = 200;
+    private static final int FILMS_PER_USER = 8;
+    private static final long MIN_LIKES_PER_SECOND = 10_000;
+
+    private InMemoryUserStorage userStorage;
+    private InMemoryFilmStorage filmStorage;
+
+    @BeforeEach
+    void setUp() {
+        userStorage = new InMemoryUserStorage();
+        filmStorage = new InMemoryFilmStorage(userStorage);
+    }
+
+    @Test
+    void shouldNotLoseConcurrentLikesOnHotFilm() throws Exception {
+        int hot = createFilm(filmStorage, "Hot").getId();
+        int cold = createFilm(filmStorage, "Cold").getId();
+        int[] users = new int[THREADS * USERS_PER_THREAD];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = createUser(userStorage);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int thread = 0; thread < THREADS; thread++) {
+                int from = thread * USERS_PER_THREAD;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = from; i < from + USERS_PER_THREAD; i++) {
+                        // Каждый лайк ставится дважды: повтор не должен засчитываться
+                        filmStorage.addLike(hot, users[i]);
+                        filmStorage.addLike(hot, users[i]);
+                        filmStorage.addLike(cold, users[i]);
+                        if (i % 2 == 0) {
+                            filmStorage.removeLike(cold, users[i]);
+                        }
+                        // Чтение популярности идет параллельно с записью
+                        filmStorage.getPopularFilms(2);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(filmStorage.getLikesCount(hot)).isEqualTo(users.length);
+        assertThat(filmStorage.getLikesCount(cold)).isEqualTo(users.length / 2);
+        assertThat(filmStorage.getLikeGraph().countLikers(hot)).isEqualTo(users.length);
+        assertThat(filmStorage.getLikeGraph().countLikers(cold)).isEqualTo(users.length / 2);
+        assertThat(filmStorage.getPopularFilms(2)).extracting(Film::getId).containsExactly(hot, cold);
+        assertThat(filmStorage.reconcileLikesCount()).isZero();
+    }
+
+    @Test
+    void shouldSpreadLikesOfManyFilmsAcrossThreads() throws Exception {
+        // Полосы разносят по блокировкам лайки разных фильмов, поэтому нагрузка идет по многим фильмам
+        int[] films = new int[256];
+        for (int i = 0; i < films.length; i++) {
+            films[i] = createFilm(filmStorage, "Film " + i).getId();
+        }
+        int[] users = new int[THREADS * USERS_PER_THREAD];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = createUser(userStorage);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        long elapsed;
+        try {
+            for (int thread = 0; thread < THREADS; thread++) {
+                int from = thread * USERS_PER_THREAD;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = from; i < from + USERS_PER_THREAD; i++) {
+                        for (int j = 0; j < FILMS_PER_USER; j++) {
+                            filmStorage.addLike(films[(i + j * 31) % films.length], users[i]);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            long started = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+            elapsed = System.nanoTime() - started;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long likes = (long) users.length * FILMS_PER_USER;
+        assertThat(filmStorage.getTotalLikesCount()).isEqualTo(likes);
+        for (int film : films) {
+            assertThat(filmStorage.getLikesCount(film)).isEqualTo(likes / films.length);
+        }
+        assertThat(filmStorage.reconcileLikesCount()).isZero();
+        // Нижняя граница с большим запасом: тест ловит регресс к общей блокировке, а не меряет железо
+        assertThat(likes * TimeUnit.SECONDS.toNanos(1) / elapsed).isGreaterThan(MIN_LIKES_PER_SECOND);
+    }
+
+    @Test
+    void shouldKeepLikeGraphCompact() {
+        int[] films = new int[100];
+        for (int i = 0; i < films.length; i++) {
+            films[i] = createFilm(filmStorage, "Film " + i).getId();
+        }
+        int likes = 0;
+        for (int i = 0; i < 5_000; i++) {
+            int userId = createUser(userStorage);
+            for (int j = 0; j < 20; j++) {
+                filmStorage.addLike(films[(i * 7 + j * 13) % films.length], userId);
+                likes++;
+            }
+        }
+
+        // Лайк лежит в двух направлениях графа. В HashSet<Integer> каждое направление стоит
+        // около 48 байт (узел таблицы и упакованный Integer), в битмапах — единицы байт
+        long bytes = filmStorage.getLikeGraph().getSizeInBytes();
+        assertThat(filmStorage.getTotalLikesCount()).isEqualTo(likes);
+        assertThat((double) bytes / likes).isLessThan(8.0);
+    }
+
+    @Test
+    void shouldFilterPopularFilmsByGenreMpaAndYear() {
+        TestFixtures.assertFilteredPopularFilms(filmStorage, new InMemoryGenreMpaStorage(), createUser(userStorage));
+    }
+}
@@ -0,0 +1,69 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.yandex.practicum.filmorate.TestFixtures.createUser;
+
+class InMemoryUserStorageTest {
+    private InMemoryUserStorage userStorage;
+
+    @BeforeEach
+    void setUp() {
+        userStorage = new InMemoryUserStorage();
+    }
+
+    @Test
+    void shouldKeepFriendsInBitmapsAndIntersectThem() {
+        int first = createUser(userStorage);
+        int second = createUser(userStorage);
+        int common = createUser(userStorage);
+        int other = createUser(userStorage);
+
+        userStorage.addFriend(first, common);
+        userStorage.addFriend(first, other);
+        userStorage.addFriend(second, common);
+        userStorage.addFriend(first, common);
+
+        assertThat(userStorage.getFriends(first)).extracting(User::getId).containsExactly(common, other);
+        assertThat(userStorage.getCommonFriends(first, second)).extracting(User::getId).containsExactly(common);
+        // Друзья в ответе заполняются из графа, как и в хранилище на базе данных
+        assertThat(userStorage.findById(first).orElseThrow().getFriends()).containsExactly(common, other);
+        assertThat(userStorage.findAll()).filteredOn(user -> user.getId() == second)
+                .singleElement().extracting(User::getFriends).isEqualTo(Set.of(common));
+
+        userStorage.removeFriend(second, common);
+        assertThat(userStorage.getCommonFriends(first, second)).isEmpty();
+
+        userStorage.delete(other);
+        assertThat(userStorage.getFriends(first)).extracting(User::getId).containsExactly(common);
+    }
+
+    @Test
+    void shouldConfirmAndDeclineFriendRequests() {
+        int alice = createUser(userStorage);
+        int bob = createUser(userStorage);
+        int carol = createUser(userStorage);
+
+        userStorage.addFriend(bob, alice);
+        userStorage.addFriend(carol, alice);
+        assertThat(userStorage.getFriends(alice)).isEmpty();
+        assertThat(userStorage.getFriendRequests(alice)).extracting(User::getId).containsExactly(bob, carol);
+
+        assertThat(userStorage.acceptFriendRequest(alice, bob)).isTrue();
+        assertThat(userStorage.declineFriendRequest(alice, carol)).isTrue();
+        assertThat(userStorage.declineFriendRequest(alice, carol)).isFalse();
+        assertThat(userStorage.getFriends(alice)).extracting(User::getId).containsExactly(bob);
+        assertThat(userStorage.getFriends(carol)).isEmpty();
+        assertThat(userStorage.getFriendRequests(alice)).isEmpty();
+
+        userStorage.removeFriend(bob, alice);
+        assertThat(userStorage.getFriends(alice)).extracting(User::getId).containsExactly(bob);
+        assertThat(userStorage.getFriendRequests(bob)).extracting(User::getId).containsExactly(alice);
+    }
+}
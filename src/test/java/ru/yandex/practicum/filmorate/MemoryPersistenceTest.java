@@ -0,0 +1,126 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.GenreMpaRegistry;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryGenreMpaStorage;
+import ru.yandex.practicum.filmorate.storage.persistence.MemoryPersistence;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MemoryPersistenceTest {
+    private final GenreMpaRegistry registry = new InMemoryGenreMpaStorage().getRegistry();
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void shouldRestoreSnapshotAndJournalTailAfterCrash() throws IOException {
+        Storages first = open();
+        int alice = first.users.create(user("alice")).getId();
+        int bob = first.users.create(user("bob")).getId();
+        int carol = first.users.create(user("carol")).getId();
+        int drama = first.films.create(film("Drama")).getId();
+        int removed = first.films.create(film("Removed")).getId();
+        first.films.addLike(drama, alice);
+        first.films.addLike(drama, bob);
+        first.films.addLike(removed, alice);
+        first.users.addFriend(alice, bob);
+        first.users.addFriend(alice, carol);
+        first.films.delete(removed);
+        first.persistence.snapshot();
+
+        // После снимка: изменения только в журнале
+        first.films.addLike(drama, carol);
+        first.films.removeLike(drama, alice);
+        first.users.removeFriend(alice, carol);
+        Film renamed = film("Drama 2");
+        renamed.setId(drama);
+        first.films.update(renamed);
+        int comedy = first.films.create(film("Comedy")).getId();
+
+        // Падение посреди записи: в конце сегмента недописанная запись
+        Files.write(lastSegment(), new byte[]{0, 0, 0, 42, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        Storages second = open();
+        assertRestored(second, drama, comedy, alice, bob, carol);
+        assertThat(second.films.findById(removed)).isEmpty();
+        assertThat(second.films.create(film("Next")).getId()).isEqualTo(comedy + 1);
+
+        second.persistence.close();
+        assertThat(segments()).hasSize(1);
+
+        Storages third = open();
+        assertRestored(third, drama, comedy, alice, bob, carol);
+        third.persistence.close();
+    }
+
+    private void assertRestored(Storages storages, int drama, int comedy, int alice, int bob, int carol) {
+        Film restored = storages.films.findById(drama).orElseThrow();
+        assertThat(restored.getName()).isEqualTo("Drama 2");
+        assertThat(restored.getMpa()).isSameAs(registry.findMpaRating(3));
+        assertThat(restored.getGenres()).containsExactly(registry.findGenre(2));
+        assertThat(storages.films.findById(comedy)).isPresent();
+        assertThat(storages.films.getLikesCount(drama)).isEqualTo(2);
+        assertThat(storages.films.getLikeGraph().getLikers(drama).toArray()).containsExactly(bob, carol);
+        assertThat(storages.films.getPopularFilms(1)).extracting(Film::getId).containsExactly(drama);
+        assertThat(storages.users.findAll()).hasSize(3);
+        assertThat(storages.users.getFriends(alice)).extracting(User::getId).containsExactly(bob);
+        assertThat(storages.users.findById(carol).orElseThrow().getLogin()).isEqualTo("carol");
+    }
+
+    private Storages open() {
+        MemoryPersistence persistence = new MemoryPersistence(directory, Duration.ofHours(1), registry);
+        InMemoryUserStorage users = new InMemoryUserStorage(persistence);
+        InMemoryFilmStorage films = new InMemoryFilmStorage(users, persistence);
+        persistence.open(films, users);
+        return new Storages(persistence, films, users);
+    }
+
+    private Path lastSegment() throws IOException {
+        return segments().stream().max(Comparator.naturalOrder()).orElseThrow();
+    }
+
+    private java.util.List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("journal-")).toList();
+        }
+    }
+
+    private Film film(String name) {
+        return Film.builder()
+                .name(name)
+                .description("Описание")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100)
+                .mpa(registry.findMpaRating(3))
+                .genres(Set.<Genre>of(registry.findGenre(2)))
+                .build();
+    }
+
+    private static User user(String login) {
+        return User.builder()
+                .email(login + "@test.com")
+                .login(login)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+    }
+
+    private record Storages(MemoryPersistence persistence, InMemoryFilmStorage films, InMemoryUserStorage users) {
+    }
+}
@@ -12,8 +12,8 @@ public class MemoryTestConfig {
 
     @Bean
     @Primary  // Только в тестах
-    public FilmStorage filmStorage() {
-        return new InMemoryFilmStorage();
+    public FilmStorage filmStorage(UserStorage userStorage) {
+        return new InMemoryFilmStorage(userStorage);
     }
 
     @Bean
@@ -0,0 +1,78 @@
+package ru.yandex.practicum.filmorate;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+class MetricsIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private UserDbStorage userStorage;
+
+    @Test
+    void shouldTimeStorageCallsAndEndpoints() throws Exception {
+        mockMvc.perform(get("/films/{id}", 999_999)).andExpect(status().isNotFound());
+        mockMvc.perform(get("/users/{id}/friends", 999_999)).andExpect(status().isNotFound());
+
+        assertThat(meterRegistry.get("filmorate.storage")
+                .tag("storage", "UserDbStorage").tag("method", "existsById").timer().count()).isPositive();
+        assertThat(meterRegistry.get("http.server.requests")
+                .tag("handler", "FilmController#getFilmById").tag("status", "404").timer().count()).isEqualTo(1);
+
+        // Гистограмма задержек — только у методов из filmorate.metrics.storage.histogram-methods
+        assertThat(meterRegistry.get("filmorate.storage").tag("storage", "UserDbStorage").tag("method", "existsById")
+                .timer().takeSnapshot().histogramCounts()).isEmpty();
+        assertThat(meterRegistry.get("filmorate.storage").tag("method", "findById")
+                .timer().takeSnapshot().histogramCounts()).isNotEmpty();
+
+        // Прокси хранилища сохраняет конкретный тип и не замеряет служебные методы
+        userStorage.loadFriendGraph();
+        assertThat(meterRegistry.find("filmorate.storage").tag("method", "loadFriendGraph").timer()).isNull();
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("filmorate_storage_seconds_bucket")))
+                .andExpect(content().string(containsString("handler=\"FilmController#getFilmById\"")));
+    }
+
+    @Test
+    void shouldCountStorageErrorsButNotDomainExceptions() {
+        double notFoundBefore = errors("update");
+        assertThatThrownBy(() -> userStorage.update(User.builder().id(999_999).build()))
+                .isInstanceOf(NotFoundException.class);
+        assertThat(errors("update")).isEqualTo(notFoundBefore);
+
+        double failuresBefore = errors("findByIds");
+        assertThatThrownBy(() -> userStorage.findByIds(null)).isInstanceOf(NullPointerException.class);
+        assertThat(errors("findByIds")).isEqualTo(failuresBefore + 1);
+    }
+
+    private double errors(String method) {
+        var counter = meterRegistry.find("filmorate.storage.errors")
+                .tag("storage", "UserDbStorage").tag("method", method).counter();
+        return counter != null ? counter.count() : 0;
+    }
+}
@@ -0,0 +1,60 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.RecommendationService;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static ru.yandex.practicum.filmorate.TestFixtures.createFilm;
+import static ru.yandex.practicum.filmorate.TestFixtures.createUser;
+import static ru.yandex.practicum.filmorate.TestFixtures.like;
+
+class RecommendationServiceTest {
+    private InMemoryUserStorage userStorage;
+    private InMemoryFilmStorage filmStorage;
+    private RecommendationService recommendationService;
+
+    @BeforeEach
+    void setUp() {
+        userStorage = new InMemoryUserStorage();
+        filmStorage = new InMemoryFilmStorage(userStorage);
+        recommendationService = new RecommendationService(filmStorage, userStorage);
+    }
+
+    @Test
+    void shouldRecommendFilmsLikedBySimilarUsers() {
+        int[] films = new int[5];
+        for (int i = 0; i < films.length; i++) {
+            films[i] = createFilm(filmStorage, "Film " + i).getId();
+        }
+        int target = createUser(userStorage);
+        int twin = createUser(userStorage);
+        int stranger = createUser(userStorage);
+
+        like(filmStorage, target, films[0], films[1]);
+        like(filmStorage, twin, films[0], films[1], films[2], films[3]);
+        like(filmStorage, stranger, films[1], films[4]);
+
+        // Двойник совпадает по двум фильмам, случайный пользователь — по одному
+        assertThat(recommendationService.getRecommendations(target, 10)).extracting(Film::getId)
+                .containsExactly(films[3], films[2], films[4]);
+        assertThat(recommendationService.getRecommendations(target, 1)).extracting(Film::getId)
+                .containsExactly(films[3]);
+
+        filmStorage.removeLike(films[1], stranger);
+        assertThat(recommendationService.getRecommendations(target, 10)).extracting(Film::getId)
+                .containsExactly(films[3], films[2]);
+        assertThat(recommendationService.getRecommendations(stranger, 10)).isEmpty();
+    }
+
+    @Test
+    void shouldRejectUnknownUser() {
+        assertThatThrownBy(() -> recommendationService.getRecommendations(999, 10))
+                .isInstanceOf(NotFoundException.class);
+    }
+}
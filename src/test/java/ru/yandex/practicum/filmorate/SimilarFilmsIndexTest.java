@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.SimilarFilmsIndex;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.yandex.practicum.filmorate.TestFixtures.createFilm;
+import static ru.yandex.practicum.filmorate.TestFixtures.createUser;
+import static ru.yandex.practicum.filmorate.TestFixtures.like;
+
+class SimilarFilmsIndexTest {
+    private InMemoryUserStorage userStorage;
+    private InMemoryFilmStorage filmStorage;
+    private SimpleMeterRegistry meterRegistry;
+    private SimilarFilmsIndex similarFilmsIndex;
+
+    @BeforeEach
+    void setUp() {
+        userStorage = new InMemoryUserStorage();
+        filmStorage = new InMemoryFilmStorage(userStorage);
+        meterRegistry = new SimpleMeterRegistry();
+        similarFilmsIndex = new SimilarFilmsIndex(filmStorage, meterRegistry);
+    }
+
+    @Test
+    void shouldRecomputeOnlyFilmsAffectedByLikeChanges() {
+        int[] films = new int[4];
+        for (int i = 0; i < films.length; i++) {
+            films[i] = createFilm(filmStorage, "Film " + i).getId();
+        }
+        int first = createUser(userStorage);
+        int second = createUser(userStorage);
+        int third = createUser(userStorage);
+
+        like(filmStorage, first, films[0], films[1]);
+        like(filmStorage, second, films[0], films[1], films[2]);
+        like(filmStorage, third, films[2], films[3]);
+
+        assertThat(similarFilmsIndex.refresh()).isEqualTo(4);
+        // Жаккар: у фильмов 0 и 1 одни и те же зрители, у 0 и 2 — один из трех
+        assertThat(similarFilmsIndex.getSimilar(films[0], 10)).containsExactly(films[1], films[2]);
+        assertThat(similarFilmsIndex.getSimilar(films[0], 1)).containsExactly(films[1]);
+        assertThat(similarFilmsIndex.getSimilar(films[3], 10)).containsExactly(films[2]);
+        assertThat(similarFilmsIndex.refresh()).isZero();
+        assertThat(similarFilmsIndex.getProgress()).isEqualTo(1.0);
+
+        // Фильм 3 не связан с фильмом 1 и не пересчитывается
+        filmStorage.removeLike(films[1], first);
+        filmStorage.removeLike(films[1], second);
+        assertThat(similarFilmsIndex.refresh()).isEqualTo(3);
+        assertThat(similarFilmsIndex.getSimilar(films[0], 10)).containsExactly(films[2]);
+        assertThat(similarFilmsIndex.getSimilar(films[1], 10)).isEmpty();
+
+        filmStorage.delete(films[3]);
+        similarFilmsIndex.refresh();
+        assertThat(similarFilmsIndex.getSimilar(films[2], 10)).containsExactly(films[0]);
+
+        assertThat(meterRegistry.get("filmorate.similar.recomputed").counter().count()).isGreaterThanOrEqualTo(7);
+        assertThat(meterRegistry.get("filmorate.similar.refresh").timer().count()).isEqualTo(3);
+    }
+}
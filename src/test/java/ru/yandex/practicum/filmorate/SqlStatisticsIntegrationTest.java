@@ -0,0 +1,96 @@
+package ru.yandex.practicum.filmorate;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import ru.yandex.practicum.filmorate.config.SqlStatistics;
+import ru.yandex.practicum.filmorate.config.SqlStatisticsFilter;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+@SpringBootTest(properties = "filmorate.sql-stats.debug-headers=true")
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+class SqlStatisticsIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private UserDbStorage userStorage;
+
+    private int alice;
+    private int bob;
+    private int carol;
+
+    @BeforeEach
+    void setUp() {
+        alice = userStorage.create(user("sql_alice")).getId();
+        bob = userStorage.create(user("sql_bob")).getId();
+        carol = userStorage.create(user("sql_carol")).getId();
+        userStorage.addFriend(alice, carol);
+        userStorage.addFriend(bob, carol);
+    }
+
+    @Test
+    void shouldCountStatementsPerEndpoint() throws Exception {
+        assertThat(statements(get("/stats"))).isZero();
+        // Пользователи — один запрос при любом размере страницы, друзья берутся из графа в памяти
+        assertThat(statements(get("/users"))).isEqualTo(1);
+        assertThat(statements(get("/users").param("limit", "2"))).isEqualTo(1);
+        // Друзья одного пользователя берутся из графа в памяти
+        assertThat(statements(get("/users/{id}", alice))).isEqualTo(1);
+        assertThat(statements(get("/users/{id}/friends", alice))).isEqualTo(2);
+        assertThat(statements(get("/users/{id}/friends/common/{otherId}", alice, bob))).isEqualTo(3);
+        assertThat(statements(put("/users/{id}/friends/{friendId}", alice, bob))).isEqualTo(4);
+
+        assertThat(meterRegistry.get("filmorate.http.sql.statements")
+                .tag("method", "GET").tag("uri", "/users/{id}/friends/common/{otherId}")
+                .summary().totalAmount()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldNotMultiplyStatementsWithUserCount() {
+        int before = findAllStatements();
+        for (int i = 0; i < 5; i++) {
+            int id = userStorage.create(user("sql_extra" + i)).getId();
+            userStorage.addFriend(id, alice);
+        }
+        assertThat(findAllStatements()).isEqualTo(before).isEqualTo(1);
+    }
+
+    private int findAllStatements() {
+        try (SqlStatistics.Scope scope = SqlStatistics.begin()) {
+            userStorage.findAll();
+            return scope.getStatements();
+        }
+    }
+
+    private int statements(MockHttpServletRequestBuilder request) throws Exception {
+        String header = mockMvc.perform(request).andReturn().getResponse().getHeader(SqlStatisticsFilter.STATEMENTS_HEADER);
+        return Integer.parseInt(header);
+    }
+
+    private static User user(String login) {
+        return User.builder()
+                .email(login + "@test.com")
+                .login(login)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+    }
+}
@@ -0,0 +1,95 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Stats;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.StatsService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StatsServiceTest {
+    private InMemoryUserStorage userStorage;
+    private InMemoryFilmStorage filmStorage;
+    private StatsService statsService;
+    private UserService userService;
+
+    @BeforeEach
+    void setUp() {
+        userStorage = new InMemoryUserStorage();
+        filmStorage = new InMemoryFilmStorage(userStorage);
+        statsService = new StatsService(filmStorage, userStorage);
+        userService = new UserService(userStorage, statsService);
+    }
+
+    @Test
+    void shouldSeedCountersFromStorages() {
+        int alice = createUser("alice");
+        int bob = createUser("bob");
+        int film = filmStorage.create(film()).getId();
+        filmStorage.addLike(film, alice);
+        userStorage.addFriend(alice, bob);
+        userStorage.addFriend(bob, alice);
+
+        statsService.seed();
+
+        assertThat(statsService.getStats()).isEqualTo(new Stats(1, 2, 1, 2));
+    }
+
+    @Test
+    void shouldFollowServiceMutationsWithoutRecounting() {
+        statsService.seed();
+        int alice = userService.create(user("alice")).getId();
+        int bob = userService.create(user("bob")).getId();
+
+        userService.addFriend(alice, bob);
+        userService.addFriend(alice, bob);
+        assertThat(statsService.getStats().getTotalFriendships()).isEqualTo(1);
+        userService.acceptFriendRequest(bob, alice);
+        assertThat(statsService.getStats()).isEqualTo(new Stats(0, 2, 0, 2));
+
+        userService.removeFriend(alice, bob);
+        userService.declineFriendRequest(alice, bob);
+        assertThat(statsService.getStats()).isEqualTo(new Stats(0, 2, 0, 0));
+        assertThat(statsService.reconcile()).isZero();
+    }
+
+    @Test
+    void shouldRepairDriftOnReconcile() {
+        statsService.seed();
+        int alice = createUser("alice");
+        int film = filmStorage.create(film()).getId();
+        filmStorage.addLike(film, alice);
+
+        // Изменения в обход сервисов счетчики не видят до сверки
+        assertThat(statsService.getStats()).isEqualTo(new Stats(0, 0, 0, 0));
+        assertThat(statsService.reconcile()).isEqualTo(3);
+        assertThat(statsService.getStats()).isEqualTo(new Stats(1, 1, 1, 0));
+    }
+
+    private int createUser(String login) {
+        return userStorage.create(user(login)).getId();
+    }
+
+    private static User user(String login) {
+        return User.builder()
+                .email(login + "@test.com")
+                .login(login)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+    }
+
+    private static Film film() {
+        return Film.builder()
+                .name("Film")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100)
+                .build();
+    }
+}
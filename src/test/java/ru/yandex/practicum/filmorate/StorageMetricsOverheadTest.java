@@ -0,0 +1,58 @@
+package ru.yandex.practicum.filmorate;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import ru.yandex.practicum.filmorate.config.MetricsConfig;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.yandex.practicum.filmorate.TestFixtures.createFilm;
+
+/**
+ * Микробенчмарк прокси метрик хранилища: сравнивает вызов дешевого метода напрямую и через прокси.
+ */
+class StorageMetricsOverheadTest {
+    private static final int CALLS = 200_000;
+    private static final int ROUNDS = 10;
+    // Порог с большим запасом: тест ловит регресс вроде поиска таймера по тегам на каждый вызов
+    private static final long MAX_OVERHEAD_NANOS = 2_000;
+
+    @Test
+    void shouldAddLittleOverheadPerStorageCall() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", registry);
+        FilmStorage direct = new InMemoryFilmStorage(new InMemoryUserStorage());
+        FilmStorage proxied = (FilmStorage) MetricsConfig
+                .storageMetricsPostProcessor(beanFactory.getBeanProvider(MeterRegistry.class))
+                .postProcessAfterInitialization(direct, "filmStorage");
+        int filmId = createFilm(direct, "Benchmark").getId();
+
+        // Лучший из нескольких раундов отсекает прогрев JIT и паузы сборщика
+        long directNanos = Long.MAX_VALUE;
+        long proxiedNanos = Long.MAX_VALUE;
+        long sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long started = System.nanoTime();
+            for (int i = 0; i < CALLS; i++) {
+                sink += direct.getLikesCount(filmId);
+            }
+            directNanos = Math.min(directNanos, System.nanoTime() - started);
+
+            started = System.nanoTime();
+            for (int i = 0; i < CALLS; i++) {
+                sink += proxied.getLikesCount(filmId);
+            }
+            proxiedNanos = Math.min(proxiedNanos, System.nanoTime() - started);
+        }
+
+        assertThat(sink).isZero();
+        assertThat(registry.get("filmorate.storage").tag("method", "getLikesCount").timer().count())
+                .isEqualTo((long) CALLS * ROUNDS);
+        assertThat((proxiedNanos - directNanos) / CALLS).isLessThan(MAX_OVERHEAD_NANOS);
+    }
+}
@@ -4,8 +4,10 @@ import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.storage.film.*;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
@@ -29,16 +31,22 @@ public class TestConfig {
         return new JdbcTemplate(dataSource);
     }
 
+    @Bean
+    public TransactionTemplate transactionTemplate(DataSource dataSource) {
+        return new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
     @Bean
     @Primary
-    public FilmStorage filmStorage(JdbcTemplate jdbcTemplate) {
-        return new FilmDbStorage(jdbcTemplate);
+    public FilmStorage filmStorage(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                   GenreMpaStorage genreMpaStorage) {
+        return new FilmDbStorage(jdbcTemplate, transactionTemplate, genreMpaStorage);
     }
 
     @Bean
     @Primary
-    public UserStorage userStorage(JdbcTemplate jdbcTemplate) {
-        return new UserDbStorage(jdbcTemplate);
+    public UserStorage userStorage(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        return new UserDbStorage(jdbcTemplate, transactionTemplate);
     }
 
     @Bean
@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.GenreMpaStorage;
+import ru.yandex.practicum.filmorate.storage.film.PopularFilmsFilter;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Общие для тестов хранилищ данные и проверки: одинаковые сценарии прогоняются на JDBC и в памяти.
+ */
+final class TestFixtures {
+
+    private TestFixtures() {
+    }
+
+    static Film createFilm(FilmStorage storage, String name) {
+        return createFilm(storage, name, null);
+    }
+
+    static Film createFilm(FilmStorage storage, String name, String description) {
+        return storage.create(Film.builder()
+                .name(name)
+                .description(description)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100)
+                .build());
+    }
+
+    static int createUser(UserStorage storage) {
+        return storage.create(User.builder()
+                .email("user@test.com")
+                .login("login")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build()).getId();
+    }
+
+    static void like(FilmStorage storage, int userId, int... filmIds) {
+        for (int filmId : filmIds) {
+            storage.addLike(filmId, userId);
+        }
+    }
+
+    static void assertFilteredPopularFilms(FilmStorage storage, GenreMpaStorage genreMpaStorage, int userId) {
+        Film comedy = storage.create(filteredFilm(genreMpaStorage, 1, 1, 2000));
+        Film comedyDrama = storage.create(filteredFilm(genreMpaStorage, 1, 2, 2001));
+        comedyDrama.setGenres(Set.of(genreMpaStorage.getGenreById(1), genreMpaStorage.getGenreById(2)));
+        comedyDrama = storage.update(comedyDrama);
+        Film drama = storage.create(filteredFilm(genreMpaStorage, 2, 1, 2000));
+        storage.addLike(comedy.getId(), userId);
+
+        assertThat(storage.getPopularFilms(10, new PopularFilmsFilter(1, null, null))).extracting(Film::getId)
+                .containsExactly(comedy.getId(), comedyDrama.getId());
+        assertThat(storage.getPopularFilms(10, new PopularFilmsFilter(2, null, null))).extracting(Film::getId)
+                .containsExactly(drama.getId(), comedyDrama.getId());
+        assertThat(storage.getPopularFilms(10, new PopularFilmsFilter(null, 1, 2000))).extracting(Film::getId)
+                .containsExactly(comedy.getId(), drama.getId());
+        assertThat(storage.getPopularFilms(1, new PopularFilmsFilter(1, 2, 2001))).extracting(Film::getId)
+                .containsExactly(comedyDrama.getId());
+        assertThat(storage.getPopularFilms(10, new PopularFilmsFilter(3, null, null))).isEmpty();
+
+        // Лайк и смена MPA должны сразу отражаться в отфильтрованной выдаче
+        storage.addLike(drama.getId(), userId);
+        storage.removeLike(comedy.getId(), userId);
+        comedy.setMpa(genreMpaStorage.getMpaRatingById(2));
+        storage.update(comedy);
+        assertThat(storage.getPopularFilms(10, new PopularFilmsFilter(null, 1, null))).extracting(Film::getId)
+                .containsExactly(drama.getId());
+        assertThat(storage.getPopularFilms(10, new PopularFilmsFilter(null, 2, null))).extracting(Film::getId)
+                .containsExactly(comedyDrama.getId(), comedy.getId());
+    }
+
+    private static Film filteredFilm(GenreMpaStorage genreMpaStorage, int genreId, int mpaId, int year) {
+        return Film.builder()
+                .name("Film " + genreId + "/" + mpaId + "/" + year)
+                .releaseDate(LocalDate.of(year, 6, 1))
+                .duration(100)
+                .mpa(genreMpaStorage.getMpaRatingById(mpaId))
+                .genres(Set.of(genreMpaStorage.getGenreById(genreId)))
+                .build();
+    }
+}
@@ -3,8 +3,10 @@ package ru.yandex.practicum.filmorate;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.storage.film.*;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
@@ -29,13 +31,19 @@ public class TestJdbcConfig {
     }
 
     @Bean
-    public FilmStorage filmDbStorage(JdbcTemplate jdbcTemplate) {
-        return new FilmDbStorage(jdbcTemplate);
+    public TransactionTemplate transactionTemplate(DataSource dataSource) {
+        return new TransactionTemplate(new DataSourceTransactionManager(dataSource));
     }
 
     @Bean
-    public UserStorage userDbStorage(JdbcTemplate jdbcTemplate) {
-        return new UserDbStorage(jdbcTemplate);
+    public FilmStorage filmDbStorage(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                     GenreMpaStorage genreMpaStorage) {
+        return new FilmDbStorage(jdbcTemplate, transactionTemplate, genreMpaStorage);
+    }
+
+    @Bean
+    public UserStorage userDbStorage(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        return new UserDbStorage(jdbcTemplate, transactionTemplate);
     }
 
     @Bean
@@ -12,8 +12,8 @@ public class TestMemoryConfig {
 
     @Bean
     @Primary
-    public FilmStorage inMemoryFilmStorage() {
-        return new InMemoryFilmStorage();
+    public FilmStorage inMemoryFilmStorage(UserStorage inMemoryUserStorage) {
+        return new InMemoryFilmStorage(inMemoryUserStorage);
     }
 
     @Bean
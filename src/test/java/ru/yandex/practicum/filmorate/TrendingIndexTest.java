@@ -0,0 +1,95 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.storage.film.TrendingIndex;
+import ru.yandex.practicum.filmorate.storage.film.TrendingWindow;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrendingIndexTest {
+    private static final Instant START = Instant.parse("2024-01-10T12:30:00Z");
+
+    private final MutableClock clock = new MutableClock(START);
+    private final TrendingIndex index = new TrendingIndex(clock);
+
+    @Test
+    void shouldShiftWindowsAsHoursPass() {
+        index.recordLike(1, 1, START.minus(Duration.ofHours(30)));
+        index.recordLike(2, 1, START);
+        index.recordLike(2, 1, START);
+        index.recordLike(2, 2, START);
+        index.recordLike(3, 1, START.minus(Duration.ofDays(8)));
+
+        assertThat(index.top(TrendingWindow.DAY, 10)).containsExactly(2);
+        assertThat(index.top(TrendingWindow.WEEK, 10)).containsExactly(2, 1);
+
+        // Через сутки лайки фильма 2 выпадают из дневного окна, через неделю — из недельного
+        clock.advance(Duration.ofHours(24));
+        assertThat(index.top(TrendingWindow.DAY, 10)).isEmpty();
+        assertThat(index.top(TrendingWindow.WEEK, 10)).containsExactly(2, 1);
+
+        clock.advance(Duration.ofDays(5));
+        assertThat(index.top(TrendingWindow.WEEK, 10)).containsExactly(2);
+        clock.advance(Duration.ofDays(1));
+        assertThat(index.top(TrendingWindow.WEEK, 10)).isEmpty();
+
+        // Выпавший лайк снимается без изменений, а повторный лайк снова засчитывается
+        index.recordUnlike(2, 1);
+        index.recordLike(2, 1, clock.instant());
+        assertThat(index.top(TrendingWindow.DAY, 10)).containsExactly(2);
+    }
+
+    @Test
+    void shouldForgetUnlikedAndRemovedFilms() {
+        index.recordLike(1, 1, START);
+        index.recordLike(1, 2, START.minus(Duration.ofHours(2)));
+        index.recordLike(2, 1, START.minus(Duration.ofHours(3)));
+        index.recordLike(3, 1, START);
+        assertThat(index.top(TrendingWindow.DAY, 10)).containsExactly(1, 3, 2);
+
+        index.recordUnlike(1, 2);
+        index.recordUnlike(1, 2);
+        assertThat(index.top(TrendingWindow.DAY, 10)).containsExactly(3, 2, 1);
+
+        index.removeFilm(3);
+        assertThat(index.top(TrendingWindow.WEEK, 10)).containsExactly(2, 1);
+
+        // Сдвиг окна после удаления не должен вычитать лайки удаленного фильма
+        clock.advance(Duration.ofDays(2));
+        assertThat(index.top(TrendingWindow.DAY, 10)).isEmpty();
+        assertThat(index.top(TrendingWindow.WEEK, 10)).containsExactly(2, 1);
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package ru.yandex.practicum.filmorate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.LocalDate;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class UserControllerIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void shouldReturnAllUsersWithoutPagingParams() throws Exception {
+        int firstId = createUser("full_list_1");
+        int secondId = createUser("full_list_2");
+        mockMvc.perform(put("/users/{id}/friends/{friendId}", firstId, secondId))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/users"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[?(@.id == %d)].friends[0]", firstId).value(secondId))
+                .andExpect(jsonPath("$[?(@.id == %d)]", secondId).exists())
+                .andExpect(header().doesNotExist("X-Next-Cursor"));
+
+        mockMvc.perform(get("/users").param("after", String.valueOf(firstId)).param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(secondId));
+    }
+
+    @Test
+    void shouldRejectInvalidPageParams() throws Exception {
+        mockMvc.perform(get("/users").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/users").param("limit", "1001"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/users").param("after", "-1").param("limit", "10"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private int createUser(String login) throws Exception {
+        User user = User.builder()
+                .email(login + "@test.com")
+                .login(login)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+        String response = mockMvc.perform(post("/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(user)))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readValue(response, User.class).getId();
+    }
+}
@@ -7,18 +7,29 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.TestPropertySource;
 import ru.yandex.practicum.filmorate.model.User;
-import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+import ru.yandex.practicum.filmorate.storage.ChunkedIdQuery;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 @SpringBootTest
 @TestPropertySource(properties = {"filmorate.storage.type=jdbc"})
 class UserDbStorageTest {
 
     @Autowired
-    private UserStorage userStorage;
+    private UserDbStorage userStorage;
 
     @Autowired
     private JdbcTemplate jdbcTemplate;
@@ -31,6 +42,7 @@ class UserDbStorageTest {
         jdbcTemplate.update("DELETE FROM friendships");
         jdbcTemplate.update("DELETE FROM film_likes");
         jdbcTemplate.update("DELETE FROM users");
+        userStorage.loadFriendGraph();
 
         testUser = User.builder()
                 .email("test@test.com")
@@ -91,4 +103,154 @@ class UserDbStorageTest {
         assertThat(allUsers).extracting("email")
                 .containsExactlyInAnyOrder("test@test.com", "second@test.com");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testCommonFriendsFromFriendGraph() {
+        int first = userStorage.create(user("first")).getId();
+        int second = userStorage.create(user("second")).getId();
+        int common = userStorage.create(user("common")).getId();
+        int other = userStorage.create(user("other")).getId();
+        int removed = userStorage.create(user("removed")).getId();
+
+        userStorage.addFriend(first, common);
+        userStorage.addFriend(first, other);
+        userStorage.addFriend(first, removed);
+        userStorage.addFriend(second, common);
+        userStorage.addFriend(second, removed);
+
+        assertThat(userStorage.getCommonFriends(first, second)).extracting(User::getId)
+                .containsExactly(common, removed);
+
+        userStorage.delete(removed);
+        userStorage.removeFriend(second, common);
+        assertThat(userStorage.getCommonFriends(first, second)).isEmpty();
+
+        // Граф, заново загруженный из таблицы, совпадает с поддерживаемым при записи
+        userStorage.addFriend(second, other);
+        userStorage.loadFriendGraph();
+        assertThat(userStorage.getCommonFriends(first, second)).extracting(User::getId).containsExactly(other);
+        assertThat(userStorage.getFriendGraph().countFriends(first)).isEqualTo(2);
+    }
+
+    @Test
+    void testFindAllAndPagesFillFriendsFromGraph() {
+        int first = userStorage.create(user("first")).getId();
+        int second = userStorage.create(user("second")).getId();
+        int third = userStorage.create(user("third")).getId();
+        userStorage.addFriend(first, second);
+        userStorage.addFriend(first, third);
+        userStorage.addFriend(third, first);
+
+        assertThat(userStorage.findAll()).extracting(User::getId, User::getFriends).containsExactly(
+                tuple(first, Set.of(second, third)),
+                tuple(second, Set.of()),
+                tuple(third, Set.of(first)));
+
+        assertThat(userStorage.findPage(0, 2)).extracting(User::getId, User::getFriends).containsExactly(
+                tuple(first, Set.of(second, third)),
+                tuple(second, Set.of()));
+        assertThat(userStorage.findPage(second, 2)).extracting(User::getId, User::getFriends).containsExactly(
+                tuple(third, Set.of(first)));
+        assertThat(userStorage.findPage(third, 2)).isEmpty();
+    }
+
+    @Test
+    void testFriendRequestWorkflowKeepsOneRowPerPair() {
+        int alice = userStorage.create(user("alice")).getId();
+        int bob = userStorage.create(user("bob")).getId();
+        int carol = userStorage.create(user("carol")).getId();
+
+        // Запрос виден в друзьях только отправителю, у получателя — во входящих
+        userStorage.addFriend(bob, alice);
+        assertThat(userStorage.getFriends(bob)).extracting(User::getId).containsExactly(alice);
+        assertThat(userStorage.getFriends(alice)).isEmpty();
+        assertThat(userStorage.getFriendRequests(alice)).extracting(User::getId).containsExactly(bob);
+
+        assertThat(userStorage.acceptFriendRequest(alice, bob)).isTrue();
+        assertThat(userStorage.acceptFriendRequest(alice, bob)).isFalse();
+        assertThat(userStorage.getFriends(alice)).extracting(User::getId).containsExactly(bob);
+        assertThat(userStorage.findById(bob).orElseThrow().getFriends()).containsExactly(alice);
+        assertThat(userStorage.getFriendRequests(alice)).isEmpty();
+
+        // Встречный запрос тоже подтверждает дружбу
+        userStorage.addFriend(carol, alice);
+        userStorage.addFriend(alice, carol);
+        assertThat(userStorage.getFriends(carol)).extracting(User::getId).containsExactly(alice);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM friendships", Integer.class)).isEqualTo(2);
+
+        // Удаление из друзей оставляет запрос от бывшего друга, его можно отклонить
+        userStorage.removeFriend(alice, carol);
+        assertThat(userStorage.getFriends(alice)).extracting(User::getId).containsExactly(bob);
+        assertThat(userStorage.getFriendRequests(alice)).extracting(User::getId).containsExactly(carol);
+        assertThat(userStorage.declineFriendRequest(alice, carol)).isTrue();
+        assertThat(userStorage.getFriends(carol)).isEmpty();
+
+        userStorage.loadFriendGraph();
+        assertThat(userStorage.getFriendGraph().getFriends(alice).toArray()).containsExactly(bob);
+        assertThat(userStorage.getFriendGraph().getFriends(bob).toArray()).containsExactly(alice);
+        assertThat(userStorage.getFriendGraph().countFriends(carol)).isZero();
+    }
+
+    @Test
+    void testFindByIdsQueriesInChunksAndKeepsOrder() {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < ChunkedIdQuery.CHUNK_SIZE + 100; i++) {
+            ids.add(userStorage.create(user("chunk" + i)).getId());
+        }
+        Collections.reverse(ids);
+        ids.add(ids.get(0));
+        ids.add(-1);
+
+        List<User> found = userStorage.findByIds(ids);
+
+        assertThat(found).extracting(User::getId).containsExactlyElementsOf(ids.subList(0, ids.size() - 1));
+    }
+
+    @Test
+    void testConcurrentFriendChangesKeepGraphInSyncWithTable() throws Exception {
+        int alice = userStorage.create(user("sync_alice")).getId();
+        int bob = userStorage.create(user("sync_bob")).getId();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int thread = 0; thread < 8; thread++) {
+                int seed = thread;
+                futures.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 100; i++) {
+                        int from = random.nextBoolean() ? alice : bob;
+                        int to = from == alice ? bob : alice;
+                        switch (random.nextInt(4)) {
+                            case 0 -> userStorage.addFriend(from, to);
+                            case 1 -> userStorage.removeFriend(from, to);
+                            case 2 -> userStorage.acceptFriendRequest(from, to);
+                            default -> userStorage.declineFriendRequest(from, to);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Граф, который хранилище вело по ходу изменений, совпадает с построенным заново по таблице
+        int[] aliceFriends = userStorage.getFriendGraph().getFriends(alice).toArray();
+        int[] bobFriends = userStorage.getFriendGraph().getFriends(bob).toArray();
+        userStorage.loadFriendGraph();
+        assertThat(userStorage.getFriendGraph().getFriends(alice).toArray()).isEqualTo(aliceFriends);
+        assertThat(userStorage.getFriendGraph().getFriends(bob).toArray()).isEqualTo(bobFriends);
+    }
+
+    private static User user(String login) {
+        return User.builder()
+                .email(login + "@test.com")
+                .login(login)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+    }
+}